@@ -4,17 +4,32 @@
 
 package gitpair;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ProjectComponent;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import gitpair.git.GitMetrics;
+import gitpair.git.NativeGitConfig;
+import gitpair.pairing.PairFilesWatcher;
 import gitpair.ui.GitPairWidget;
+import gitpair.ui.PairFilesListener;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Project Component to register into the IntelliJ plugin system.
  */
 public class GitPairProjectComponent implements ProjectComponent {
 
+    private static final long PAIR_FILES_QUIET_MILLIS = 300;
+
     private Project mProject;
+    private PairFilesWatcher pairFilesWatcher;
 
     /**
      * Called by IntelliJ in plugin.xml implementation-class.
@@ -27,6 +42,7 @@ public class GitPairProjectComponent implements ProjectComponent {
 
     @Override
     public void initComponent() {
+        GitMetrics.getInstance().registerMBean();
     }
 
     @Override
@@ -41,15 +57,60 @@ public class GitPairProjectComponent implements ProjectComponent {
 
     @Override
     public void projectOpened() {
-        // called when project is opened
+        // called when project is opened, .pairs and git are read in the background so opening isn't slower
         GitPairWidget gitPairWidget = new GitPairWidget(mProject);
-        if (gitPairWidget.updateState()) {
+        GitPairState.Snapshot snapshot = GitPairState.getInstance(mProject).getState();
+        if (snapshot.configured) {
+            // show the last pair right away, and correct it once git answers
+            gitPairWidget.showSnapshot(snapshot);
             gitPairWidget.installWidgetToStatusBar(mProject);
         }
+        gitPairWidget.updateStateInBackground(!snapshot.configured);
+        startWatchingPairFiles();
     }
 
     @Override
     public void projectClosed() {
         // called when project is being closed
+        if (pairFilesWatcher != null) {
+            pairFilesWatcher.close();
+            pairFilesWatcher = null;
+        }
+    }
+
+    /**
+     * Tell the widgets when .pairs or git config changes, in the IDE or outside it.
+     * The IDE reports files it saves, and the {@link PairFilesWatcher} sees the rest, like ~/.pairs or a terminal `git config`.
+     */
+    private void startWatchingPairFiles() {
+        String basePath = mProject.getBasePath();
+        if (basePath == null) {
+            return;
+        }
+        List<File> files = new ArrayList<File>(new NativeGitConfig(basePath).getConfigFiles());
+        files.add(new File(basePath, ".pairs"));
+        files.add(new File(System.getProperty("user.home"), ".pairs"));
+
+        final PairFilesWatcher watcher = new PairFilesWatcher(files, PAIR_FILES_QUIET_MILLIS, new Runnable() {
+            @Override
+            public void run() {
+                if (!mProject.isDisposed()) {
+                    mProject.getMessageBus().syncPublisher(PairFilesListener.TOPIC).pairFilesChanged();
+                }
+            }
+        });
+        ApplicationManager.getApplication().getMessageBus().connect(mProject).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener.Adapter() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                for (VFileEvent event : events) {
+                    if (watcher.isWatched(event.getPath())) {
+                        watcher.changed();
+                        return;
+                    }
+                }
+            }
+        });
+        watcher.start();
+        pairFilesWatcher = watcher;
     }
 }
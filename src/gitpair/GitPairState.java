@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.components.StoragePathMacros;
+import com.intellij.openapi.project.Project;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The last pair the widget showed, saved in the project's workspace file,
+ * so the widget can show it as soon as the project opens, before .pairs is read or git is asked.
+ * Called by IntelliJ in plugin.xml projectService.
+ */
+@State(name = "GitPair", storages = @Storage(StoragePathMacros.WORKSPACE_FILE))
+public class GitPairState implements PersistentStateComponent<GitPairState.Snapshot> {
+
+    private Snapshot snapshot = new Snapshot();
+
+    /**
+     * @param project idea Project.
+     * @return the project's saved pair.
+     */
+    @NotNull
+    public static GitPairState getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, GitPairState.class);
+    }
+
+    @NotNull
+    @Override
+    public synchronized Snapshot getState() {
+        return snapshot;
+    }
+
+    @Override
+    public synchronized void loadState(@NotNull Snapshot state) {
+        snapshot = state;
+    }
+
+    /**
+     * Remember what the widget shows now.
+     *
+     * @param displayName  status bar text.
+     * @param scope        "local" or "global", or null if git has no user.
+     * @param memberEmails emails of the paired team members.
+     */
+    public synchronized void update(@Nullable String displayName, @Nullable String scope, @NotNull List<String> memberEmails) {
+        Snapshot updated = new Snapshot();
+        updated.configured = true;
+        updated.displayName = displayName;
+        updated.scope = scope;
+        updated.memberEmails = new ArrayList<String>(memberEmails);
+        snapshot = updated;
+    }
+
+    /**
+     * Remember that the project has no .pairs, so the widget isn't shown until one is found.
+     */
+    public synchronized void clear() {
+        snapshot = new Snapshot();
+    }
+
+    /**
+     * What's written to the workspace file, public fields so IntelliJ can serialize them.
+     */
+    public static class Snapshot {
+        public boolean configured;
+        public String displayName;
+        public String scope;
+        public List<String> memberEmails = new ArrayList<String>();
+    }
+}
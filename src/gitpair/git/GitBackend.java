@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Where pairing reads and writes git config.
+ * {@link GitRunner} runs git, falling back from reading the files directly,
+ * {@link NativeGitBackend} only reads and writes the files, and tests can keep config in memory.
+ */
+public interface GitBackend {
+
+    /**
+     * Everything the backend can see of git's config, and where each value was set.
+     *
+     * @return snapshot, or null on error.
+     */
+    @Nullable
+    GitConfigSnapshot getConfigSnapshot();
+
+    /**
+     * Find the value git uses for a key, and where it was set.
+     *
+     * @param key for example "user.email".
+     * @return the entry, or null if it isn't set.
+     */
+    @Nullable
+    GitConfigEntry getConfigEntry(@NotNull String key);
+
+    /**
+     * Start collecting config changes that are written together.
+     *
+     * @return new empty transaction, that commits with this backend.
+     */
+    @NotNull
+    GitConfigTransaction beginTransaction();
+
+    /**
+     * Apply a transaction's changes, called by {@link GitConfigTransaction#commit()}.
+     *
+     * @param transaction changes to make.
+     * @return true if every change was applied, false if nothing was.
+     */
+    boolean commit(@NotNull GitConfigTransaction transaction);
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * The last few git commands the plugin ran, how long they took and how they ended, for when pairing is slow.
+ * A fixed size ring of parallel arrays, so recording a command only replaces the oldest one's values.
+ */
+public class GitCommandJournal {
+
+    /**
+     * Exit code of entries where no git process ended: notes, and git that couldn't be started.
+     */
+    public static final int NO_EXIT_CODE = Integer.MIN_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 128;
+    private static final int MAX_STDERR_LENGTH = 200;
+    private static final GitCommandJournal INSTANCE = new GitCommandJournal(DEFAULT_CAPACITY);
+
+    private final String[] commands;
+    private final String[] workDirectories;
+    private final long[] startMillis;
+    private final long[] durationNanos;
+    private final int[] exitCodes;
+    private final boolean[] timeouts;
+    private final String[] stderrs;
+    private long recorded;
+
+    /**
+     * Empty journal.
+     *
+     * @param capacity how many entries to keep.
+     */
+    GitCommandJournal(int capacity) {
+        commands = new String[capacity];
+        workDirectories = new String[capacity];
+        startMillis = new long[capacity];
+        durationNanos = new long[capacity];
+        exitCodes = new int[capacity];
+        timeouts = new boolean[capacity];
+        stderrs = new String[capacity];
+    }
+
+    /**
+     * The journal shared by all projects.
+     *
+     * @return application wide journal.
+     */
+    @NotNull
+    public static GitCommandJournal getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record a git process.
+     *
+     * @param command       for example "git config --local user.email".
+     * @param workDirectory where git ran.
+     * @param nanos         how long it ran.
+     * @param exitCode      git's exit code, or {@link #NO_EXIT_CODE} if it didn't start.
+     * @param timeout       true if git was killed for taking too long.
+     * @param stderr        what git complained about, cut short if long.
+     */
+    public synchronized void record(@NotNull String command, @Nullable String workDirectory, long nanos,
+                                    int exitCode, boolean timeout, @Nullable String stderr) {
+        int i = (int) (recorded % commands.length);
+        commands[i] = command;
+        workDirectories[i] = workDirectory;
+        startMillis[i] = System.currentTimeMillis() - nanos / 1000000;
+        durationNanos[i] = nanos;
+        exitCodes[i] = exitCode;
+        timeouts[i] = timeout;
+        stderrs[i] = truncate(stderr);
+        recorded++;
+    }
+
+    /**
+     * Record something that happened without a git process, like giving up on a busy config.
+     *
+     * @param message what happened.
+     */
+    public void note(@NotNull String message) {
+        record(message, null, 0, NO_EXIT_CODE, false, null);
+    }
+
+    /**
+     * @return how many entries were ever recorded, including ones that were overwritten.
+     */
+    public synchronized long getRecordedCount() {
+        return recorded;
+    }
+
+    /**
+     * Write the journal out as text, oldest first, one entry per line.
+     *
+     * @return for example "12:00:01.250 12.3ms exit=0 /project: git config --local user.email".
+     */
+    @NotNull
+    public synchronized String dump() {
+        SimpleDateFormat time = new SimpleDateFormat("HH:mm:ss.SSS");
+        StringBuilder out = new StringBuilder();
+        long first = Math.max(0, recorded - commands.length);
+        for (long n = first; n < recorded; n++) {
+            int i = (int) (n % commands.length);
+            out.append(time.format(new Date(startMillis[i]))).append(' ');
+            if (exitCodes[i] == NO_EXIT_CODE && workDirectories[i] == null) {
+                out.append("note: ").append(commands[i]).append('\n');
+                continue;
+            }
+            out.append(LatencyHistogram.formatMillis(durationNanos[i])).append(' ');
+            if (timeouts[i]) {
+                out.append("timeout");
+            } else if (exitCodes[i] == NO_EXIT_CODE) {
+                out.append("not started");
+            } else {
+                out.append("exit=").append(exitCodes[i]);
+            }
+            out.append(' ').append(workDirectories[i]).append(": ").append(commands[i]);
+            if (stderrs[i] != null) {
+                out.append(" | ").append(stderrs[i]);
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    @Nullable
+    private static String truncate(@Nullable String stderr) {
+        if (stderr == null) {
+            return null;
+        }
+        String trimmed = stderr.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        if (trimmed.length() > MAX_STDERR_LENGTH) {
+            trimmed = trimmed.substring(0, MAX_STDERR_LENGTH) + "...";
+        }
+        // one entry per line
+        return trimmed.replace('\n', ' ');
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import com.intellij.execution.configurations.GeneralCommandLine;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything about running git that doesn't change between commands: which git, where, and with what environment.
+ * Built once per runner, so each command only adds its arguments.
+ * Immutable, so it can be shared between threads.
+ */
+class GitCommandTemplate {
+
+    private final String exePath;
+    private final String workDirectory;
+    private final Map<String, String> environment;
+
+    /**
+     * Build the template.
+     *
+     * @param exePath       git to run.
+     * @param workDirectory folder git runs in.
+     * @param parentEnvironment the IDE's environment, copied once.
+     */
+    GitCommandTemplate(@NotNull String exePath, @Nullable String workDirectory, @NotNull Map<String, String> parentEnvironment) {
+        this.exePath = exePath;
+        this.workDirectory = workDirectory;
+        // sized so the extra variables don't make it grow
+        Map<String, String> env = new HashMap<String, String>((parentEnvironment.size() + 3) * 4 / 3 + 1);
+        env.putAll(parentEnvironment);
+        // same messages in every locale
+        env.put("LC_ALL", "C");
+        // never wait for a password prompt nobody can see
+        env.put("GIT_TERMINAL_PROMPT", "0");
+        // don't take index locks the IDE's own git commands would wait for
+        env.put("GIT_OPTIONAL_LOCKS", "0");
+        this.environment = Collections.unmodifiableMap(env);
+    }
+
+    /**
+     * @return git to run.
+     */
+    @NotNull
+    String getExePath() {
+        return exePath;
+    }
+
+    /**
+     * @return unmodifiable environment git runs with.
+     */
+    @NotNull
+    Map<String, String> getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Make the command line for one git command.
+     *
+     * @param parameters List of parameters after `git` to run.
+     * @return new command line, the IDE's environment isn't added again.
+     */
+    @NotNull
+    GeneralCommandLine newCommandLine(@NotNull List<String> parameters) {
+        GeneralCommandLine commandLine = new GeneralCommandLine()
+                .withParentEnvironmentType(GeneralCommandLine.ParentEnvironmentType.NONE)
+                .withEnvironment(environment);
+        commandLine.setExePath(exePath);
+        commandLine.setWorkDirectory(workDirectory);
+        commandLine.addParameters(parameters);
+        return commandLine;
+    }
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Git config couldn't be written because someone else was writing it, usually the IDE's own git,
+ * or git took too long.  Trying again a little later usually works.
+ */
+public class GitConfigBusyException extends IOException {
+
+    /**
+     * @param message what was busy.
+     */
+    public GitConfigBusyException(@NotNull String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * One key and value from git config, and where it was set.
+ */
+public class GitConfigEntry {
+
+    private final String key;
+    private final String value;
+    private final GitConfigScope scope;
+    private final String origin;
+
+    /**
+     * A config value.
+     *
+     * @param key    normalized key, for example "user.email".
+     * @param value  value, null if the key was set without a value.
+     * @param scope  which config it came from.
+     * @param origin where git read it, for example "file:.git/config".
+     */
+    public GitConfigEntry(@NotNull String key, @Nullable String value, @NotNull GitConfigScope scope, @Nullable String origin) {
+        this.key = key;
+        this.value = value;
+        this.scope = scope;
+        this.origin = origin;
+    }
+
+    @NotNull
+    public String getKey() {
+        return key;
+    }
+
+    @Nullable
+    public String getValue() {
+        return value;
+    }
+
+    @NotNull
+    public GitConfigScope getScope() {
+        return scope;
+    }
+
+    @Nullable
+    public String getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public String toString() {
+        return scope.getGitName() + " " + origin + " " + key + "=" + value;
+    }
+}
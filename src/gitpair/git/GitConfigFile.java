@@ -0,0 +1,593 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A git config file (`.git/config`, `~/.gitconfig`) parsed in process, so reading and writing a key doesn't fork git.
+ * Follows the syntax described in `git help config`, and keeps every line it doesn't touch exactly as it was.
+ * Keys are written like git writes them, "section.name" or "section.subsection.name".
+ */
+public class GitConfigFile {
+
+    private final List<String> lines;
+    private final List<Section> sections = new ArrayList<Section>();
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final boolean crlf;
+    private boolean modified;
+
+    private GitConfigFile(List<String> lines, boolean crlf) {
+        this.lines = lines;
+        this.crlf = crlf;
+    }
+
+    /**
+     * Parse the contents of a git config file.
+     *
+     * @param text contents of the config file.
+     * @return the parsed file, or null if git would also refuse to read it.
+     */
+    @Nullable
+    public static GitConfigFile parse(@NotNull String text) {
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        GitConfigFile configFile = new GitConfigFile(lines, text.contains("\r\n"));
+        if (!configFile.index()) {
+            return null;
+        }
+        return configFile;
+    }
+
+    /**
+     * Read and parse a git config file.  A missing file is read as an empty config, like git does.
+     *
+     * @param file config file to read.
+     * @return the parsed file, or null if git would also refuse to read it.
+     * @throws IOException if the file exists but can't be read.
+     */
+    @Nullable
+    public static GitConfigFile read(@NotNull File file) throws IOException {
+        if (!file.exists()) {
+            return parse("");
+        }
+        return parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the last value of a key, git uses the last one when a key is set more than once.
+     *
+     * @param key for example "user.email".
+     * @return the value, or null if it isn't set or was set without a value.
+     */
+    @Nullable
+    public String get(@NotNull String key) {
+        Key k = Key.parse(key);
+        if (k == null) {
+            return null;
+        }
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            if (k.matches(entry.section, entry.name)) {
+                return entry.value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Every key and value in file order, like `git config --list`.
+     * Valueless (implicitly true) keys have a null value.
+     *
+     * @return list of key and value pairs.
+     */
+    @NotNull
+    public List<String[]> list() {
+        List<String[]> list = new ArrayList<String[]>(entries.size());
+        for (Entry entry : entries) {
+            list.add(new String[]{entry.section.keyPrefix() + entry.name, entry.value});
+        }
+        return list;
+    }
+
+    /**
+     * Does the file pull in other files?  Those aren't followed here, so the file alone doesn't tell the whole story.
+     *
+     * @return true if there is an include.path or includeIf.*.path.
+     */
+    public boolean hasIncludes() {
+        for (Entry entry : entries) {
+            if ("path".equals(entry.name)
+                    && (("include".equals(entry.section.name) && entry.section.subsection == null)
+                    || ("includeif".equals(entry.section.name) && entry.section.subsection != null))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set a key, replacing every previous value of it, like `git config --replace-all key value`.
+     * Setting a key to the value it already has doesn't modify the file.
+     *
+     * @param key   for example "user.email".
+     * @param value new value.
+     * @return false if the key can't be written here (invalid key, or shares a line with its section header).
+     */
+    public boolean set(@NotNull String key, @NotNull String value) {
+        Key k = Key.parse(key);
+        if (k == null) {
+            return false;
+        }
+        List<Entry> matching = matching(k);
+        for (Entry entry : matching) {
+            if (entry.onHeaderLine) {
+                return false;
+            }
+        }
+        if (matching.size() == 1 && value.equals(matching.get(0).value)) {
+            // already set, nothing to write
+            return true;
+        }
+        String line = "\t" + (matching.isEmpty() ? k.name : matching.get(matching.size() - 1).rawName) + " = " + quote(value);
+        if (matching.isEmpty()) {
+            Section section = lastSection(k);
+            if (section == null) {
+                addLine(lines.size(), k.header());
+                addLine(lines.size(), line);
+            } else {
+                addLine(section.lastLine + 1, line);
+            }
+        } else {
+            // replace the last one and drop the others, bottom up so the line numbers stay valid
+            Entry last = matching.get(matching.size() - 1);
+            for (int i = matching.size() - 1; i >= 0; i--) {
+                Entry entry = matching.get(i);
+                removeLines(entry);
+                if (entry == last) {
+                    addLine(entry.firstLine, line);
+                }
+            }
+        }
+        modified = true;
+        return index();
+    }
+
+    /**
+     * Remove every value of a key, like `git config --unset-all key`.
+     *
+     * @param key for example "user.email".
+     * @return false if the key can't be removed here (invalid key, or shares a line with its section header).
+     */
+    public boolean unset(@NotNull String key) {
+        Key k = Key.parse(key);
+        if (k == null) {
+            return false;
+        }
+        List<Entry> matching = matching(k);
+        if (matching.isEmpty()) {
+            return true;
+        }
+        for (Entry entry : matching) {
+            if (entry.onHeaderLine) {
+                return false;
+            }
+        }
+        for (int i = matching.size() - 1; i >= 0; i--) {
+            removeLines(matching.get(i));
+        }
+        modified = true;
+        return index();
+    }
+
+    /**
+     * Has {@link #set} or {@link #unset} changed anything since it was parsed.
+     *
+     * @return true if the file needs to be written.
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * The text of the config file, including edits.
+     *
+     * @return file contents.
+     */
+    @NotNull
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Quote a value the way git writes it.
+     *
+     * @param value raw value.
+     * @return value safe to write after "name = ".
+     */
+    static String quote(String value) {
+        boolean quote = value.length() > 0 && (value.charAt(0) == ' ' || value.charAt(value.length() - 1) == ' ');
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '"':
+                case '\\':
+                    sb.append('\\').append(c);
+                    break;
+                case ';':
+                case '#':
+                    quote = true;
+                    sb.append(c);
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        if (quote) {
+            return "\"" + sb + "\"";
+        }
+        return sb.toString();
+    }
+
+    private void addLine(int index, String line) {
+        // lines keep their "\r" when the file uses Windows line endings
+        lines.add(index, crlf ? line + "\r" : line);
+    }
+
+    private List<Entry> matching(Key k) {
+        List<Entry> matching = new ArrayList<Entry>();
+        for (Entry entry : entries) {
+            if (k.matches(entry.section, entry.name)) {
+                matching.add(entry);
+            }
+        }
+        return matching;
+    }
+
+    private Section lastSection(Key k) {
+        for (int i = sections.size() - 1; i >= 0; i--) {
+            Section section = sections.get(i);
+            if (k.matches(section)) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    private void removeLines(Entry entry) {
+        for (int line = entry.lastLine; line >= entry.firstLine; line--) {
+            lines.remove(line);
+        }
+    }
+
+    /**
+     * Rebuild the sections and entries from the lines.
+     *
+     * @return false if the file isn't valid git config syntax.
+     */
+    private boolean index() {
+        sections.clear();
+        entries.clear();
+        Section section = null;
+        int lineCount = lines.size();
+        for (int i = 0; i < lineCount; i++) {
+            String line = stripCarriageReturn(lines.get(i));
+            int pos = skipWhitespace(line, 0);
+            if (pos == line.length() || line.charAt(pos) == '#' || line.charAt(pos) == ';') {
+                continue;
+            }
+            boolean onHeaderLine = false;
+            if (line.charAt(pos) == '[') {
+                section = new Section();
+                pos = parseHeader(line, pos + 1, section);
+                if (pos < 0) {
+                    return false;
+                }
+                section.lastLine = i;
+                sections.add(section);
+                pos = skipWhitespace(line, pos);
+                if (pos == line.length() || line.charAt(pos) == '#' || line.charAt(pos) == ';') {
+                    continue;
+                }
+                onHeaderLine = true;
+            }
+            if (section == null) {
+                // a key before any section
+                return false;
+            }
+            int nameStart = pos;
+            if (!isAsciiLetter(line.charAt(pos))) {
+                return false;
+            }
+            while (pos < line.length() && (isAsciiAlphanumeric(line.charAt(pos)) || line.charAt(pos) == '-')) {
+                pos++;
+            }
+            Entry entry = new Entry();
+            entry.section = section;
+            entry.rawName = line.substring(nameStart, pos);
+            entry.name = entry.rawName.toLowerCase(Locale.ROOT);
+            entry.firstLine = i;
+            entry.onHeaderLine = onHeaderLine;
+            pos = skipWhitespace(line, pos);
+            if (pos == line.length() || line.charAt(pos) == '#' || line.charAt(pos) == ';') {
+                entry.value = null;
+                entry.lastLine = i;
+            } else if (line.charAt(pos) == '=') {
+                StringBuilder value = new StringBuilder();
+                i = parseValue(i, pos + 1, value);
+                if (i < 0) {
+                    return false;
+                }
+                entry.value = value.toString();
+                entry.lastLine = i;
+            } else {
+                return false;
+            }
+            section.lastLine = entry.lastLine;
+            entries.add(entry);
+        }
+        return true;
+    }
+
+    /**
+     * Parse "section", "section.subsection" or `section "subsection"` up to and including the "]".
+     *
+     * @return position after the "]", or -1 if it's not a valid header.
+     */
+    private static int parseHeader(String line, int pos, Section section) {
+        int start = pos;
+        while (pos < line.length() && (isAsciiAlphanumeric(line.charAt(pos)) || line.charAt(pos) == '-' || line.charAt(pos) == '.')) {
+            pos++;
+        }
+        String name = line.substring(start, pos);
+        if (name.length() == 0) {
+            return -1;
+        }
+        if (pos < line.length() && line.charAt(pos) == ']') {
+            // deprecated [section.subsection] syntax is case insensitive
+            int dot = name.indexOf('.');
+            if (dot < 0) {
+                section.name = name.toLowerCase(Locale.ROOT);
+            } else {
+                section.name = name.substring(0, dot).toLowerCase(Locale.ROOT);
+                section.subsection = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+            }
+            return pos + 1;
+        }
+        if (name.indexOf('.') >= 0) {
+            return -1;
+        }
+        section.name = name.toLowerCase(Locale.ROOT);
+        pos = skipWhitespace(line, pos);
+        if (pos == line.length() || line.charAt(pos) != '"') {
+            return -1;
+        }
+        pos++;
+        StringBuilder subsection = new StringBuilder();
+        while (pos < line.length() && line.charAt(pos) != '"') {
+            char c = line.charAt(pos);
+            if (c == '\\') {
+                pos++;
+                if (pos == line.length()) {
+                    return -1;
+                }
+                c = line.charAt(pos);
+            }
+            subsection.append(c);
+            pos++;
+        }
+        if (pos + 1 >= line.length() || line.charAt(pos + 1) != ']') {
+            return -1;
+        }
+        section.subsection = subsection.toString();
+        return pos + 2;
+    }
+
+    /**
+     * Parse a value, following backslash line continuations.
+     *
+     * @return index of the last line of the value, or -1 if the value is invalid.
+     */
+    private int parseValue(int lineIndex, int pos, StringBuilder value) {
+        String line = stripCarriageReturn(lines.get(lineIndex));
+        pos = skipWhitespace(line, pos);
+        boolean quoted = false;
+        int spaces = 0;
+        while (true) {
+            if (pos >= line.length()) {
+                if (quoted) {
+                    return -1;
+                }
+                return lineIndex;
+            }
+            char c = line.charAt(pos++);
+            if (!quoted && (c == ' ' || c == '\t')) {
+                spaces++;
+                continue;
+            }
+            if (!quoted && (c == '#' || c == ';')) {
+                return lineIndex;
+            }
+            for (; spaces > 0; spaces--) {
+                value.append(' ');
+            }
+            if (c == '\\') {
+                if (pos >= line.length()) {
+                    // continues on the next line
+                    lineIndex++;
+                    if (lineIndex >= lines.size()) {
+                        return -1;
+                    }
+                    line = stripCarriageReturn(lines.get(lineIndex));
+                    pos = 0;
+                    continue;
+                }
+                c = line.charAt(pos++);
+                switch (c) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case '\\':
+                    case '"':
+                        value.append(c);
+                        break;
+                    default:
+                        return -1;
+                }
+                continue;
+            }
+            if (c == '"') {
+                quoted = !quoted;
+                continue;
+            }
+            value.append(c);
+        }
+    }
+
+    private static String stripCarriageReturn(String line) {
+        if (line.endsWith("\r")) {
+            return line.substring(0, line.length() - 1);
+        }
+        return line;
+    }
+
+    private static int skipWhitespace(String line, int pos) {
+        while (pos < line.length() && (line.charAt(pos) == ' ' || line.charAt(pos) == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiAlphanumeric(char c) {
+        return isAsciiLetter(c) || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * Whether git takes a section or variable name, letters, digits and '-', variables start with a letter.
+     */
+    private static boolean isValidName(String name, boolean variable) {
+        if (name.isEmpty() || (variable && !isAsciiLetter(name.charAt(0)))) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!isAsciiAlphanumeric(name.charAt(i)) && name.charAt(i) != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A [section] header, and where it ends.
+     */
+    private static class Section {
+        String name;
+        String subsection;
+        int lastLine;
+
+        String keyPrefix() {
+            return subsection == null ? name + "." : name + "." + subsection + ".";
+        }
+    }
+
+    /**
+     * A "name = value" line, or lines if the value was continued.
+     */
+    private static class Entry {
+        Section section;
+        String name;
+        String rawName;
+        String value;
+        int firstLine;
+        int lastLine;
+        boolean onHeaderLine;
+    }
+
+    /**
+     * A "section.subsection.name" key split into its parts.
+     */
+    private static class Key {
+        String section;
+        String subsection;
+        String name;
+
+        @Nullable
+        static Key parse(String key) {
+            int firstDot = key.indexOf('.');
+            int lastDot = key.lastIndexOf('.');
+            if (firstDot <= 0 || lastDot == key.length() - 1) {
+                return null;
+            }
+            String section = key.substring(0, firstDot);
+            String name = key.substring(lastDot + 1);
+            if (!isValidName(section, false) || !isValidName(name, true)) {
+                // git config refuses these, don't write what it can't read
+                return null;
+            }
+            Key k = new Key();
+            k.section = section.toLowerCase(Locale.ROOT);
+            k.subsection = firstDot == lastDot ? null : key.substring(firstDot + 1, lastDot);
+            k.name = name.toLowerCase(Locale.ROOT);
+            return k;
+        }
+
+        boolean matches(Section section) {
+            if (!this.section.equals(section.name)) {
+                return false;
+            }
+            return subsection == null ? section.subsection == null : subsection.equals(section.subsection);
+        }
+
+        boolean matches(Section section, String name) {
+            return this.name.equals(name) && matches(section);
+        }
+
+        String header() {
+            if (subsection == null) {
+                return "[" + section + "]";
+            }
+            return "[" + section + " \"" + subsection.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]";
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+/**
+ * Git's lock file protocol for config files.
+ * Creating "config.lock" is the lock, the new contents are written into it, and renaming it over "config" commits.
+ * Git does the same, so the git binary and this plugin never write over each other.
+ */
+class GitConfigLock {
+
+    private final File target;
+    private final File lockFile;
+    private boolean done;
+
+    private GitConfigLock(File target, File lockFile) {
+        this.target = target;
+        this.lockFile = lockFile;
+    }
+
+    /**
+     * Take the lock for a config file.
+     *
+     * @param target config file to lock.
+     * @return the held lock.
+     * @throws GitConfigBusyException if someone else (usually git) holds the lock.
+     * @throws IOException             if the lock can't be created.
+     */
+    @NotNull
+    static GitConfigLock acquire(@NotNull File target) throws IOException {
+        File lockFile = new File(target.getPath() + ".lock");
+        File parent = lockFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("could not create " + parent);
+        }
+        // createNewFile is an atomic create-if-absent, which is what makes the file a lock
+        if (!lockFile.createNewFile()) {
+            throw new GitConfigBusyException("could not lock config file " + target + ": " + lockFile + " exists");
+        }
+        return new GitConfigLock(target, lockFile);
+    }
+
+    /**
+     * Write the new contents and move them into place, which releases the lock.
+     *
+     * @param contents full text of the new config file.
+     * @throws IOException if the file couldn't be written, the original is left alone and the lock released.
+     */
+    void commit(@NotNull String contents) throws IOException {
+        try {
+            FileOutputStream out = new FileOutputStream(lockFile);
+            try {
+                out.write(contents.getBytes(StandardCharsets.UTF_8));
+            } finally {
+                out.close();
+            }
+            copyPermissions();
+            Path lockPath = lockFile.toPath();
+            Path targetPath = target.toPath();
+            try {
+                Files.move(lockPath, targetPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(lockPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            done = true;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Give up the lock without changing the config file.  Does nothing after {@link #commit}.
+     */
+    void release() {
+        if (!done) {
+            done = true;
+            //noinspection ResultOfMethodCallIgnored
+            lockFile.delete();
+        }
+    }
+
+    /**
+     * Keep the config file's permissions, like git does, ~/.gitconfig is sometimes deliberately private.
+     */
+    private void copyPermissions() throws IOException {
+        if (!target.exists()) {
+            return;
+        }
+        PosixFileAttributeView from = Files.getFileAttributeView(target.toPath(), PosixFileAttributeView.class);
+        PosixFileAttributeView to = Files.getFileAttributeView(lockFile.toPath(), PosixFileAttributeView.class);
+        if (from != null && to != null) {
+            to.setPermissions(from.readAttributes().permissions());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Where a config value comes from, as printed by `git config --show-scope`.
+ */
+public enum GitConfigScope {
+    SYSTEM("system"),
+    GLOBAL("global"),
+    LOCAL("local"),
+    WORKTREE("worktree"),
+    COMMAND("command"),
+    UNKNOWN("unknown");
+
+    private final String gitName;
+
+    GitConfigScope(String gitName) {
+        this.gitName = gitName;
+    }
+
+    /**
+     * Name git uses for the scope.
+     *
+     * @return for example "global".
+     */
+    @NotNull
+    public String getGitName() {
+        return gitName;
+    }
+
+    /**
+     * Look up the scope git printed.
+     *
+     * @param gitName for example "global".
+     * @return matching scope, or UNKNOWN.
+     */
+    @NotNull
+    public static GitConfigScope fromGitName(@Nullable String gitName) {
+        for (GitConfigScope scope : values()) {
+            if (scope.gitName.equals(gitName)) {
+                return scope;
+            }
+        }
+        return UNKNOWN;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything git config had at one moment, with the scope and origin of every value.
+ * Immutable, so it can be read from any thread.
+ */
+public class GitConfigSnapshot {
+
+    private final List<GitConfigEntry> entries;
+    private final Map<String, GitConfigEntry> effectiveEntries;
+
+    /**
+     * Snapshot of config entries.
+     *
+     * @param entries every entry in the order git reads them, later entries override earlier ones.
+     */
+    public GitConfigSnapshot(@NotNull List<GitConfigEntry> entries) {
+        this.entries = Collections.unmodifiableList(new ArrayList<GitConfigEntry>(entries));
+        Map<String, GitConfigEntry> effective = new HashMap<String, GitConfigEntry>(entries.size() * 2);
+        for (GitConfigEntry entry : entries) {
+            effective.put(entry.getKey(), entry);
+        }
+        this.effectiveEntries = Collections.unmodifiableMap(effective);
+    }
+
+    /**
+     * Parse the output of `git config --list -z --show-origin --show-scope`.
+     * Every entry is "scope NUL origin NUL key LF value NUL", or "scope NUL origin NUL key NUL" without a value.
+     *
+     * @param output NUL delimited output.
+     * @return snapshot, or null if the output was cut short.
+     */
+    @Nullable
+    public static GitConfigSnapshot parse(@NotNull String output) {
+        List<GitConfigEntry> entries = new ArrayList<GitConfigEntry>();
+        int pos = 0;
+        int length = output.length();
+        while (pos < length) {
+            int scopeEnd = output.indexOf('\0', pos);
+            if (scopeEnd < 0) {
+                return null;
+            }
+            int originEnd = output.indexOf('\0', scopeEnd + 1);
+            if (originEnd < 0) {
+                return null;
+            }
+            int entryEnd = output.indexOf('\0', originEnd + 1);
+            if (entryEnd < 0) {
+                return null;
+            }
+            GitConfigScope scope = GitConfigScope.fromGitName(output.substring(pos, scopeEnd));
+            String origin = output.substring(scopeEnd + 1, originEnd);
+            int keyEnd = output.indexOf('\n', originEnd + 1);
+            String key;
+            String value;
+            if (keyEnd < 0 || keyEnd > entryEnd) {
+                key = output.substring(originEnd + 1, entryEnd);
+                value = null;
+            } else {
+                key = output.substring(originEnd + 1, keyEnd);
+                value = output.substring(keyEnd + 1, entryEnd);
+            }
+            entries.add(new GitConfigEntry(key, value, scope, origin));
+            pos = entryEnd + 1;
+        }
+        return new GitConfigSnapshot(entries);
+    }
+
+    /**
+     * Git prints section and variable names in lower case, subsections keep their case.
+     *
+     * @param key for example "User.Email".
+     * @return for example "user.email".
+     */
+    @NotNull
+    public static String normalizeKey(@NotNull String key) {
+        int firstDot = key.indexOf('.');
+        int lastDot = key.lastIndexOf('.');
+        if (firstDot < 0) {
+            return key.toLowerCase();
+        }
+        return key.substring(0, firstDot).toLowerCase() + key.substring(firstDot, lastDot) + key.substring(lastDot).toLowerCase();
+    }
+
+    /**
+     * The entry git would use for a key.
+     *
+     * @param key for example "user.email".
+     * @return the last entry for the key, or null if it isn't set.
+     */
+    @Nullable
+    public GitConfigEntry getEntry(@NotNull String key) {
+        return effectiveEntries.get(normalizeKey(key));
+    }
+
+    /**
+     * The value git would use for a key, like `git config key`.
+     *
+     * @param key for example "user.email".
+     * @return the value, or null if it isn't set.
+     */
+    @Nullable
+    public String get(@NotNull String key) {
+        GitConfigEntry entry = getEntry(key);
+        return entry == null ? null : entry.getValue();
+    }
+
+    /**
+     * The value of a key in one scope, like `git config --global key`.
+     *
+     * @param key   for example "user.email".
+     * @param scope config to look in.
+     * @return the last value in that scope, or null if it isn't set there.
+     */
+    @Nullable
+    public String get(@NotNull String key, @NotNull GitConfigScope scope) {
+        String normalized = normalizeKey(key);
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            GitConfigEntry entry = entries.get(i);
+            if (entry.getScope() == scope && entry.getKey().equals(normalized)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * All the entries in the order git read them.
+     *
+     * @return unmodifiable list of entries.
+     */
+    @NotNull
+    public List<GitConfigEntry> getEntries() {
+        return entries;
+    }
+}
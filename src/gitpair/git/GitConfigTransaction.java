@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A group of git config changes that are applied together or not at all.
+ * Changes are collected with {@link #set} and {@link #unset}, and {@link #commit()} writes each config file once.
+ * For example, changing the pair in global mode sets the global name and email and clears the local ones.
+ */
+public class GitConfigTransaction {
+
+    private final GitBackend gitBackend;
+    private final List<Operation> operations = new ArrayList<Operation>();
+
+    /**
+     * Start a transaction, use {@link GitBackend#beginTransaction()}.
+     *
+     * @param gitBackend backend that will apply the changes.
+     */
+    GitConfigTransaction(@NotNull GitBackend gitBackend) {
+        this.gitBackend = gitBackend;
+    }
+
+    /**
+     * Set a key when the transaction commits.
+     *
+     * @param scope GLOBAL or LOCAL.
+     * @param key   for example "user.email".
+     * @param value new value.
+     * @return this transaction, to chain changes.
+     */
+    @NotNull
+    public GitConfigTransaction set(@NotNull GitConfigScope scope, @NotNull String key, @NotNull String value) {
+        operations.add(new Operation(checkScope(scope), key, value));
+        return this;
+    }
+
+    /**
+     * Remove every value of a key when the transaction commits.
+     *
+     * @param scope GLOBAL or LOCAL.
+     * @param key   for example "user.email".
+     * @return this transaction, to chain changes.
+     */
+    @NotNull
+    public GitConfigTransaction unset(@NotNull GitConfigScope scope, @NotNull String key) {
+        operations.add(new Operation(checkScope(scope), key, null));
+        return this;
+    }
+
+    /**
+     * Set a user setting, like `git config [--global] key value`.
+     * In global mode the local value is cleared too, so it won't override the new setting.
+     *
+     * @param key    for example "user.email".
+     * @param value  new value.
+     * @param global true for user setting, false for project setting
+     * @return this transaction, to chain changes.
+     */
+    @NotNull
+    public GitConfigTransaction setUserValue(@NotNull String key, @NotNull String value, boolean global) {
+        if (global) {
+            set(GitConfigScope.GLOBAL, key, value);
+            // clear the local config, so it won't override our new setting
+            unset(GitConfigScope.LOCAL, key);
+        } else {
+            set(GitConfigScope.LOCAL, key, value);
+        }
+        return this;
+    }
+
+    /**
+     * Change the pair's name and email together.
+     * If both are null, the user is unset.
+     *
+     * @param name   new user.name, or null to leave it.
+     * @param email  new user.email, or null to leave it.
+     * @param global true for user setting, false for project setting
+     * @return this transaction, to chain changes.
+     */
+    @NotNull
+    public GitConfigTransaction setUserNameAndEmail(@Nullable String name, @Nullable String email, boolean global) {
+        if (name == null && email == null) {
+            GitConfigScope scope = global ? GitConfigScope.GLOBAL : GitConfigScope.LOCAL;
+            unset(scope, "user.name").unset(scope, "user.email");
+        }
+        if (name != null) {
+            setUserValue("user.name", name, global);
+        }
+        if (email != null) {
+            setUserValue("user.email", email, global);
+        }
+        return this;
+    }
+
+    /**
+     * Apply all the changes.  If any of them fail, the ones that were already applied are undone.
+     *
+     * @return true if every change was applied.
+     */
+    public boolean commit() {
+        return gitBackend.commit(this);
+    }
+
+    /**
+     * The changes, in the order they were added.
+     *
+     * @return unmodifiable list of changes.
+     */
+    @NotNull
+    List<Operation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    private static GitConfigScope checkScope(GitConfigScope scope) {
+        if (scope != GitConfigScope.GLOBAL && scope != GitConfigScope.LOCAL) {
+            throw new IllegalArgumentException("only global and local config can be changed, not " + scope.getGitName());
+        }
+        return scope;
+    }
+
+    /**
+     * Set or unset one key.
+     */
+    static class Operation {
+        final GitConfigScope scope;
+        final String key;
+        final String value;
+
+        /**
+         * @param value new value, or null to unset.
+         */
+        Operation(@NotNull GitConfigScope scope, @NotNull String key, @Nullable String value) {
+            this.scope = scope;
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean isUnset() {
+            return value == null;
+        }
+
+        /**
+         * Flag that tells git which file to change.
+         *
+         * @return "--global" or "--local".
+         */
+        String scopeFlag() {
+            return "--" + scope.getGitName();
+        }
+    }
+}
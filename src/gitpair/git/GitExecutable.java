@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A git executable that was found, and what its version can do.
+ * Immutable, so it can be shared by every project.
+ */
+public class GitExecutable {
+
+    private static final Pattern VERSION_PATTERN = Pattern.compile("git version (\\d+)\\.(\\d+)(?:\\.(\\d+))?");
+
+    private final String path;
+    private final String version;
+    private final int major;
+    private final int minor;
+    private final int patch;
+
+    /**
+     * A git executable.
+     *
+     * @param path           path of the executable, including the executable name.
+     * @param versionOutput  output of `git --version`, or null if it couldn't be run.
+     */
+    public GitExecutable(@NotNull String path, @Nullable String versionOutput) {
+        this.path = path;
+        Matcher matcher = versionOutput == null ? null : VERSION_PATTERN.matcher(versionOutput);
+        if (matcher != null && matcher.find()) {
+            this.version = versionOutput.trim();
+            this.major = Integer.parseInt(matcher.group(1));
+            this.minor = Integer.parseInt(matcher.group(2));
+            this.patch = matcher.group(3) == null ? 0 : Integer.parseInt(matcher.group(3));
+        } else {
+            this.version = null;
+            this.major = 0;
+            this.minor = 0;
+            this.patch = 0;
+        }
+    }
+
+    @NotNull
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return output of `git --version`, for example "git version 2.39.2", or null if it wasn't understood.
+     */
+    @Nullable
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @return true if the version is known, capabilities are guessed from the oldest git otherwise.
+     */
+    public boolean isVersionKnown() {
+        return version != null;
+    }
+
+    /**
+     * Compare the version.
+     *
+     * @return true if this git is the given version or newer.
+     */
+    public boolean isAtLeast(int major, int minor, int patch) {
+        if (this.major != major) {
+            return this.major > major;
+        }
+        if (this.minor != minor) {
+            return this.minor > minor;
+        }
+        return this.patch >= patch;
+    }
+
+    /**
+     * @return true if `git config --show-scope` works, added in git 2.26.
+     */
+    public boolean supportsShowScope() {
+        return isAtLeast(2, 26, 0);
+    }
+
+    /**
+     * @return true if `git config --show-origin` works, added in git 2.8.
+     */
+    public boolean supportsShowOrigin() {
+        return isAtLeast(2, 8, 0);
+    }
+
+    /**
+     * @return true if `git config -z` works, which is every git old enough to ask.
+     */
+    public boolean supportsNullTerminatedConfig() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + (version == null ? "unknown version" : version) + ")";
+    }
+}
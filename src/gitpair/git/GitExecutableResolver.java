@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.CapturingProcessHandler;
+import com.intellij.execution.process.ProcessOutput;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.EnvironmentUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Finds git on the PATH once for the whole application, and asks its version once.
+ * The answer, even that there is no git, is kept until the PATH changes, or git can't be started anymore.
+ * Nothing is locked while git is probed, so a slow git doesn't hold up other callers that already have an answer.
+ */
+public class GitExecutableResolver {
+
+    private static final String TAG = GitExecutableResolver.class.getSimpleName();
+    private static final int PROBE_TIMEOUT_MILLIS = 1000;
+    private static final GitExecutableResolver INSTANCE = new GitExecutableResolver();
+
+    private final AtomicReference<Resolution> cached = new AtomicReference<Resolution>();
+
+    GitExecutableResolver() {
+    }
+
+    /**
+     * The resolver shared by all projects.
+     *
+     * @return application wide resolver.
+     */
+    @NotNull
+    public static GitExecutableResolver getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Find git on the IDE's PATH.
+     *
+     * @return git, or null if it isn't on the PATH.
+     */
+    @Nullable
+    public GitExecutable resolve() {
+        return resolve(EnvironmentUtil.getValue("PATH"));
+    }
+
+    /**
+     * Find git on a PATH, reusing the last answer if the PATH hasn't changed.
+     *
+     * @param path directories to look in, separated like the OS separates them.
+     * @return git, or null if it isn't on the PATH.
+     */
+    @Nullable
+    GitExecutable resolve(@Nullable String path) {
+        Resolution before = cached.get();
+        if (before != null && StringUtil.equals(path, before.path)) {
+            return before.executable;
+        }
+
+        long start = System.nanoTime();
+        String exePath = findGitExePath(path);
+        GitExecutable executable = exePath == null ? null : new GitExecutable(exePath, probeVersion(exePath));
+        GitMetrics.getInstance().recordResolve(System.nanoTime() - start);
+
+        Resolution resolved = new Resolution(path, executable);
+        if (!cached.compareAndSet(before, resolved)) {
+            // another caller looked at the same time, use its answer if it's for the same PATH
+            Resolution other = cached.get();
+            if (other != null && StringUtil.equals(path, other.path)) {
+                return other.executable;
+            }
+            cached.set(resolved);
+        }
+        GitCommandJournal.getInstance().note(TAG + " found " + (executable == null ? "no git on the PATH" : executable.toString()));
+        return executable;
+    }
+
+    /**
+     * Forget git, for example because it couldn't be started, so the next {@link #resolve()} looks again.
+     */
+    public void invalidate() {
+        cached.set(null);
+    }
+
+    /**
+     * Where git was, or that it wasn't, on a PATH.
+     */
+    private static class Resolution {
+        @Nullable
+        final String path;
+        @Nullable
+        final GitExecutable executable;
+
+        Resolution(@Nullable String path, @Nullable GitExecutable executable) {
+            this.path = path;
+            this.executable = executable;
+        }
+    }
+
+    /**
+     * Calculate git's path.
+     *
+     * @return path of the git executable, including the executable name.
+     */
+    @Nullable
+    private static String findGitExePath(@Nullable String path) {
+        if (StringUtil.isEmpty(path)) {
+            return null;
+        }
+
+        String[] dirs;
+        if (SystemInfo.isWindows) {
+            dirs = path.split(";");
+        } else {
+            dirs = path.split(":");
+        }
+
+        for (String dir : dirs) {
+            String filename;
+            if (SystemInfo.isWindows) {
+                filename = dir + "/git.exe";
+            } else {
+                filename = dir + "/git";
+            }
+            File file = new File(filename);
+            if (file.exists() && file.isFile()) {
+                return filename;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Run `git --version`.
+     *
+     * @param exePath git to run.
+     * @return output, or null if it couldn't be run.
+     */
+    @Nullable
+    private static String probeVersion(@NotNull String exePath) {
+        GeneralCommandLine versionCommand = new GeneralCommandLine();
+        versionCommand.setExePath(exePath);
+        versionCommand.addParameter("--version");
+        try {
+            long start = System.nanoTime();
+            ProcessOutput output = new CapturingProcessHandler(versionCommand).runProcess(PROBE_TIMEOUT_MILLIS);
+            long nanos = System.nanoTime() - start;
+            GitMetrics.getInstance().recordCommand("--version", output.getExitCode(), output.isTimeout(), nanos);
+            GitCommandJournal.getInstance().record(exePath + " --version", null, nanos,
+                    output.getExitCode(), output.isTimeout(), output.getStderr());
+            if (output.isTimeout() || output.isCancelled() || output.getExitCode() != 0) {
+                return null;
+            }
+            return output.getStdout();
+        } catch (ExecutionException e) {
+            GitCommandJournal.getInstance().record(exePath + " --version", null, 0,
+                    GitCommandJournal.NO_EXIT_CODE, false, "OS error: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs git work off the caller's thread, so the UI never waits on git.
+ * The pool and its queue are bounded, work that doesn't fit fails fast instead of piling up,
+ * and every task can time out or be cancelled.
+ * Work that must not overlap, like writing who is paired, runs in order on a {@link Lane}.
+ */
+public class GitExecutor {
+
+    private static final GitExecutor INSTANCE = new GitExecutor(4, 64);
+
+    private final ThreadPoolExecutor executor;
+    private final ScheduledThreadPoolExecutor timer;
+
+    /**
+     * Bounded executor.
+     *
+     * @param threads   most threads running git at once.
+     * @param queueSize most tasks waiting for a thread.
+     */
+    GitExecutor(int threads, int queueSize) {
+        executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), new DaemonThreadFactory("GitPair-git-"));
+        // idle threads go away, git is only run now and then
+        executor.allowCoreThreadTimeOut(true);
+        timer = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("GitPair-timeout-"));
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * The executor shared by all projects.
+     *
+     * @return application wide executor.
+     */
+    @NotNull
+    public static GitExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Run a task on the pool.
+     * Cancelling the returned future, or the timeout expiring, interrupts the task if it's running.
+     *
+     * @param task          work to do.
+     * @param timeoutMillis fail with a {@link TimeoutException} this long after the task starts, 0 for no timeout.
+     * @param <T>           result type.
+     * @return future result, failed with a {@link RejectedExecutionException} if the executor is full.
+     */
+    @NotNull
+    public <T> CompletableFuture<T> submit(@NotNull Callable<T> task, long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        start(task, timeoutMillis, result, new CompletableFuture<Void>());
+        return result;
+    }
+
+    /**
+     * A queue of tasks that run one at a time, in the order they were submitted.
+     *
+     * @return new lane, for example one for each pair controller.
+     */
+    @NotNull
+    public Lane newLane() {
+        return new Lane();
+    }
+
+    /**
+     * Start a task on the pool.
+     *
+     * @param result   completed with what the task returns, or failed when it times out or can't run.
+     * @param finished completed when the task has really stopped, which can be after result timed out.
+     */
+    private <T> void start(@NotNull final Callable<T> task, final long timeoutMillis,
+                           @NotNull final CompletableFuture<T> result, @NotNull final CompletableFuture<Void> finished) {
+        if (result.isDone()) {
+            // cancelled before it was started
+            finished.complete(null);
+            return;
+        }
+        final AtomicBoolean started = new AtomicBoolean();
+        final Future<?> running;
+        try {
+            running = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    if (!started.compareAndSet(false, true)) {
+                        // cancelled or timed out while waiting in the queue
+                        return;
+                    }
+                    try {
+                        if (timeoutMillis > 0) {
+                            // waiting in the queue isn't git's time
+                            scheduleTimeout(result, timeoutMillis);
+                        }
+                        result.complete(task.call());
+                    } catch (Throwable e) {
+                        result.completeExceptionally(e);
+                    } finally {
+                        finished.complete(null);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            finished.complete(null);
+            return;
+        }
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+            @Override
+            public void accept(T value, Throwable error) {
+                if (error == null) {
+                    return;
+                }
+                if (started.compareAndSet(false, true)) {
+                    // never ran, and now never will
+                    running.cancel(false);
+                    finished.complete(null);
+                } else {
+                    running.cancel(true);
+                }
+            }
+        });
+    }
+
+    private void scheduleTimeout(final CompletableFuture<?> result, final long timeoutMillis) {
+        final ScheduledFuture<?> timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                result.completeExceptionally(new TimeoutException("git took longer than " + timeoutMillis + " ms"));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object value, Throwable error) {
+                timeout.cancel(false);
+            }
+        });
+    }
+
+    /**
+     * Run a quick task after a delay, for example to submit git work once things settle down.
+     * The task runs on the timer thread, so it must not run git itself.
+     *
+     * @param task        work to do, quickly.
+     * @param delayMillis how long to wait first.
+     * @return cancel it to not run the task.
+     */
+    @NotNull
+    public ScheduledFuture<?> schedule(@NotNull Runnable task, long delayMillis) {
+        return timer.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tasks that run one after the other on the pool.
+     * A task starts only when the one before it has really stopped, not when it timed out,
+     * since interrupting a task doesn't stop a git process that's already running.
+     */
+    public class Lane {
+        private CompletableFuture<Void> lastFinished = CompletableFuture.completedFuture(null);
+
+        private Lane() {
+        }
+
+        /**
+         * Run a task after the tasks submitted before it, even if they failed.
+         *
+         * @param task          work to do.
+         * @param timeoutMillis fail with a {@link TimeoutException} this long after the task starts, 0 for no timeout.
+         * @param <T>           result type.
+         * @return future result, cancelling it before the task starts means it never runs.
+         */
+        @NotNull
+        public synchronized <T> CompletableFuture<T> submit(@NotNull final Callable<T> task, final long timeoutMillis) {
+            final CompletableFuture<T> result = new CompletableFuture<T>();
+            final CompletableFuture<Void> finished = new CompletableFuture<Void>();
+            CompletableFuture<Void> previous = lastFinished;
+            lastFinished = finished;
+            previous.whenComplete(new BiConsumer<Void, Throwable>() {
+                @Override
+                public void accept(Void ignored, Throwable error) {
+                    start(task, timeoutMillis, result, finished);
+                }
+            });
+            return result;
+        }
+    }
+
+    /**
+     * Names the threads so they're easy to find in a thread dump, and doesn't keep the IDE from exiting.
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(@NotNull Runnable runnable) {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for how much time the plugin spends on git, shared by every project.
+ * Every git process is timed per subcommand and exit code, and counted against the
+ * {@link #beginOperation(String) operation} that ran it.
+ * Registered over JMX as {@link #OBJECT_NAME}.
+ */
+public class GitMetrics implements GitMetricsMBean {
+
+    public static final String OBJECT_NAME = "gitpair:type=GitMetrics";
+    private static final String TAG = GitMetrics.class.getSimpleName();
+    private static final GitMetrics INSTANCE = new GitMetrics();
+
+    private final ConcurrentMap<String, LatencyHistogram> commandLatencies = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, OperationCounter> operations = new ConcurrentHashMap<String, OperationCounter>();
+    private final ThreadLocal<OperationCounter> currentOperation = new ThreadLocal<OperationCounter>();
+    private final AtomicLong spawnCount = new AtomicLong();
+    private final AtomicLong widgetRefreshCount = new AtomicLong();
+
+    private final AtomicLong resolveCount = new AtomicLong();
+    private final AtomicLong resolveNanos = new AtomicLong();
+    private final AtomicLong lastResolveNanos = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong giveUpCount = new AtomicLong();
+    private final AtomicLong pairChangeCount = new AtomicLong();
+    private final AtomicLong pairWriteCount = new AtomicLong();
+
+    /**
+     * The metrics shared by all projects.
+     *
+     * @return application wide metrics.
+     */
+    @NotNull
+    public static GitMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Make the metrics visible in JConsole or any JMX client, once per application.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (InstanceAlreadyExistsException e) {
+            // another project registered it first
+        } catch (JMException e) {
+            GitCommandJournal.getInstance().note(TAG + " couldn't register " + OBJECT_NAME + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Record one git process.
+     *
+     * @param subcommand for example "config".
+     * @param exitCode   git's exit code.
+     * @param timeout    true if git was killed for taking too long.
+     * @param nanos      how long it ran.
+     */
+    void recordCommand(@NotNull String subcommand, int exitCode, boolean timeout, long nanos) {
+        String key = subcommand + (timeout ? " timeout" : " exit=" + exitCode);
+        LatencyHistogram histogram = commandLatencies.get(key);
+        if (histogram == null) {
+            LatencyHistogram created = new LatencyHistogram();
+            histogram = commandLatencies.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        histogram.record(nanos);
+        spawnCount.incrementAndGet();
+        OperationCounter operation = currentOperation.get();
+        if (operation != null) {
+            operation.spawns.incrementAndGet();
+        }
+    }
+
+    /**
+     * Count the git processes this thread runs against an operation, until {@link #endOperation(Object)}.
+     *
+     * @param name for example "PairController.toggleTeamMember".
+     * @return the operation this one is nested in, pass it to {@link #endOperation(Object)}.
+     */
+    @Nullable
+    public Object beginOperation(@NotNull String name) {
+        OperationCounter counter = operations.get(name);
+        if (counter == null) {
+            OperationCounter created = new OperationCounter();
+            counter = operations.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.runs.incrementAndGet();
+        OperationCounter outer = currentOperation.get();
+        currentOperation.set(counter);
+        return outer;
+    }
+
+    /**
+     * Stop counting against the operation started by {@link #beginOperation(String)}.
+     *
+     * @param outer what beginOperation returned.
+     */
+    public void endOperation(@Nullable Object outer) {
+        if (outer == null) {
+            currentOperation.remove();
+        } else {
+            currentOperation.set((OperationCounter) outer);
+        }
+    }
+
+    /**
+     * Record the status bar widget being drawn again.
+     */
+    public void recordWidgetRefresh() {
+        widgetRefreshCount.incrementAndGet();
+    }
+
+    /**
+     * Latency of one kind of git command.
+     *
+     * @param subcommand for example "config".
+     * @param exitCode   git's exit code.
+     * @return histogram, or null if that never happened.
+     */
+    @Nullable
+    public LatencyHistogram getCommandLatency(@NotNull String subcommand, int exitCode) {
+        return commandLatencies.get(subcommand + " exit=" + exitCode);
+    }
+
+    @Override
+    public long getSpawnCount() {
+        return spawnCount.get();
+    }
+
+    /**
+     * @param name operation name given to {@link #beginOperation(String)}.
+     * @return how many git processes the operation ran, in all its runs.
+     */
+    public long getOperationSpawnCount(@NotNull String name) {
+        OperationCounter counter = operations.get(name);
+        return counter == null ? 0 : counter.spawns.get();
+    }
+
+    @Override
+    public long getWidgetRefreshCount() {
+        return widgetRefreshCount.get();
+    }
+
+    @Override
+    @NotNull
+    public String[] getCommandLatencies() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<String, LatencyHistogram>(commandLatencies).entrySet()) {
+            lines.add(entry.getKey() + ": " + entry.getValue());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    @NotNull
+    public String[] getOperationSpawns() {
+        List<String> lines = new ArrayList<String>();
+        for (Map.Entry<String, OperationCounter> entry : new TreeMap<String, OperationCounter>(operations).entrySet()) {
+            lines.add(entry.getKey() + ": runs=" + entry.getValue().runs.get() + " spawns=" + entry.getValue().spawns.get());
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    @NotNull
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("git commands (").append(getSpawnCount()).append(" spawned)\n");
+        for (String line : getCommandLatencies()) {
+            report.append("  ").append(line).append('\n');
+        }
+        report.append("operations\n");
+        for (String line : getOperationSpawns()) {
+            report.append("  ").append(line).append('\n');
+        }
+        report.append("widget refreshes: ").append(getWidgetRefreshCount()).append('\n');
+        report.append("git resolved: ").append(getResolveCount())
+                .append(" times, last took ").append(LatencyHistogram.formatMillis(getLastResolveNanos())).append('\n');
+        report.append("busy config writes retried: ").append(getRetryCount())
+                .append(", gave up: ").append(getGiveUpCount()).append('\n');
+        report.append("pair changes: ").append(getPairChangeCount())
+                .append(", written to git: ").append(getPairWriteCount()).append('\n');
+        return report.toString();
+    }
+
+    /**
+     * Record finding git and asking its version.
+     *
+     * @param nanos how long it took.
+     */
+    void recordResolve(long nanos) {
+        resolveCount.incrementAndGet();
+        resolveNanos.addAndGet(nanos);
+        lastResolveNanos.set(nanos);
+    }
+
+    /**
+     * @return how many times git was looked for on the PATH.
+     */
+    @Override
+    public long getResolveCount() {
+        return resolveCount.get();
+    }
+
+    /**
+     * @return total time spent looking for git, in nanoseconds.
+     */
+    @Override
+    public long getResolveNanos() {
+        return resolveNanos.get();
+    }
+
+    /**
+     * @return time the last look for git took, in nanoseconds.
+     */
+    @Override
+    public long getLastResolveNanos() {
+        return lastResolveNanos.get();
+    }
+
+    /**
+     * Record a config write tried again because git config was busy.
+     */
+    void recordRetry() {
+        retryCount.incrementAndGet();
+    }
+
+    /**
+     * Record a config write that stayed busy until the retry policy ran out.
+     */
+    void recordGiveUp() {
+        giveUpCount.incrementAndGet();
+    }
+
+    /**
+     * @return how many times a busy config write was tried again.
+     */
+    @Override
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return how many config writes were lost because git config stayed busy.
+     */
+    @Override
+    public long getGiveUpCount() {
+        return giveUpCount.get();
+    }
+
+    /**
+     * Record changes to the pair that were written to git together.
+     *
+     * @param changes how many toggles the write covered.
+     */
+    public void recordPairWrite(int changes) {
+        pairChangeCount.addAndGet(changes);
+        pairWriteCount.incrementAndGet();
+    }
+
+    /**
+     * @return how many pair changes were asked to be written to git.
+     */
+    @Override
+    public long getPairChangeCount() {
+        return pairChangeCount.get();
+    }
+
+    /**
+     * @return how many times those changes were written to git.
+     */
+    @Override
+    public long getPairWriteCount() {
+        return pairWriteCount.get();
+    }
+
+    /**
+     * Runs and git processes of one operation.
+     */
+    private static class OperationCounter {
+        final AtomicLong runs = new AtomicLong();
+        final AtomicLong spawns = new AtomicLong();
+    }
+}
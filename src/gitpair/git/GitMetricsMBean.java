@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+/**
+ * What {@link GitMetrics} shows over JMX, as "gitpair:type=GitMetrics".
+ */
+public interface GitMetricsMBean {
+
+    /**
+     * @return how many git processes were run.
+     */
+    long getSpawnCount();
+
+    /**
+     * @return one line per subcommand and exit code, for example "config exit=0: n=12 p50=3.2ms p99=8.1ms max=9.0ms".
+     */
+    String[] getCommandLatencies();
+
+    /**
+     * @return one line per operation, for example "PairController.init: runs=2 spawns=0".
+     */
+    String[] getOperationSpawns();
+
+    /**
+     * @return how many times the status bar widget was drawn again.
+     */
+    long getWidgetRefreshCount();
+
+    /**
+     * @return how many times git was looked for on the PATH.
+     */
+    long getResolveCount();
+
+    /**
+     * @return total time spent looking for git, in nanoseconds.
+     */
+    long getResolveNanos();
+
+    /**
+     * @return time the last look for git took, in nanoseconds.
+     */
+    long getLastResolveNanos();
+
+    /**
+     * @return how many times a busy config write was tried again.
+     */
+    long getRetryCount();
+
+    /**
+     * @return how many config writes were lost because git config stayed busy.
+     */
+    long getGiveUpCount();
+
+    /**
+     * @return how many pair changes were asked to be written to git.
+     */
+    long getPairChangeCount();
+
+    /**
+     * @return how many times those changes were written to git, several quick changes are written once.
+     */
+    long getPairWriteCount();
+
+    /**
+     * @return everything above, as text.
+     */
+    String getReport();
+}
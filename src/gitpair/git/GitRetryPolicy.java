@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How long to keep trying when git config is busy.
+ * Waits grow exponentially with random jitter, so two writers backing off don't collide again,
+ * and stop once the attempts or the time budget run out.
+ * Immutable, so it can be shared between threads.
+ */
+public class GitRetryPolicy {
+
+    /**
+     * Enough to outlast a commit or fetch in the IDE, short enough that a toggle doesn't feel lost.
+     */
+    public static final GitRetryPolicy DEFAULT = new GitRetryPolicy(6, 25, 400, 2000);
+
+    /**
+     * Try once.
+     */
+    public static final GitRetryPolicy NONE = new GitRetryPolicy(1, 0, 0, 0);
+
+    private final int maxAttempts;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final long budgetMillis;
+
+    /**
+     * A retry policy.
+     *
+     * @param maxAttempts        most tries, including the first.
+     * @param initialDelayMillis wait before the second try, doubled for each try after.
+     * @param maxDelayMillis     longest wait between tries.
+     * @param budgetMillis       don't start a try this long after the first one started.
+     */
+    public GitRetryPolicy(int maxAttempts, long initialDelayMillis, long maxDelayMillis, long budgetMillis) {
+        if (maxAttempts < 1 || initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis || budgetMillis < 0) {
+            throw new IllegalArgumentException("invalid retry policy");
+        }
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * How long to wait after a failed try.
+     * Half the exponential delay is fixed, the other half random.
+     *
+     * @param attempt the try that failed, 1 for the first.
+     * @return milliseconds to wait before trying again.
+     */
+    public long getDelayMillis(int attempt) {
+        long delay = maxDelayMillis;
+        if (attempt - 1 < 62) {
+            delay = Math.min(maxDelayMillis, initialDelayMillis << (attempt - 1));
+        }
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * Decide if another try is allowed.
+     *
+     * @param attempt      the try that failed, 1 for the first.
+     * @param elapsedMillis time since the first try started, including the wait before the next.
+     * @return true to try again.
+     */
+    public boolean shouldRetry(int attempt, long elapsedMillis) {
+        return attempt < maxAttempts && elapsedMillis <= budgetMillis;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public long getBudgetMillis() {
+        return budgetMillis;
+    }
+
+    /**
+     * Run an attempt until it isn't busy, or this policy runs out.
+     * Retries and give ups are counted in {@link GitMetrics}, and give ups noted in the {@link GitCommandJournal}.
+     *
+     * @param who     for the journal, for example "GitRunner".
+     * @param attempt work to try.
+     * @return what the attempt returned, or false if it stayed busy.
+     */
+    boolean run(String who, Attempt attempt) {
+        GitMetrics metrics = GitMetrics.getInstance();
+        long start = System.nanoTime();
+        for (int tries = 1; ; tries++) {
+            try {
+                return attempt.run();
+            } catch (GitConfigBusyException e) {
+                long delay = getDelayMillis(tries);
+                long elapsed = (System.nanoTime() - start) / 1000000;
+                if (!shouldRetry(tries, elapsed + delay)) {
+                    GitCommandJournal.getInstance().note(who + " gave up after " + tries + " attempts: " + e.getMessage());
+                    metrics.recordGiveUp();
+                    return false;
+                }
+                metrics.recordRetry();
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    metrics.recordGiveUp();
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Work that can fail because git config is busy.
+     */
+    interface Attempt {
+        /**
+         * @return true if it worked, false if it failed and trying again won't help.
+         * @throws GitConfigBusyException if trying again later may work.
+         */
+        boolean run() throws GitConfigBusyException;
+    }
+}
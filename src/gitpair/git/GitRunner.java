@@ -8,25 +8,27 @@ import com.intellij.execution.ExecutionException;
 import com.intellij.execution.configurations.GeneralCommandLine;
 import com.intellij.execution.process.CapturingProcessHandler;
 import com.intellij.execution.process.ProcessOutput;
-import com.intellij.openapi.util.SystemInfo;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.EnvironmentUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Run git commands.
+ * Reading and writing the user's name and email is done in process with {@link NativeGitConfig} when possible,
+ * and falls back to running git when the config files alone can't answer.
  */
-public class GitRunner {
+public class GitRunner implements GitBackend {
 
     private static final String TAG = GitRunner.class.getSimpleName();
+    private static final int PROCESS_TIMEOUT_MILLIS = 1000;
     private String projectBasePath;
-    private String gitPathCache;
+    private NativeGitConfig nativeGitConfig;
+    private volatile GitCommandTemplate commandTemplate;
+    private volatile GitRetryPolicy retryPolicy = GitRetryPolicy.DEFAULT;
 
     /**
      * Initialize with the root path for the project.
@@ -35,65 +37,47 @@ public class GitRunner {
      */
     public GitRunner(String projectBasePath) {
         this.projectBasePath = projectBasePath;
+        this.nativeGitConfig = new NativeGitConfig(projectBasePath);
     }
 
     /**
-     * Run `git config user.email` and return the current configured user.
+     * Same as `git config user.email`, return the current configured user.
      *
      * @return returns the current configured user email or null on error.
      */
     @Nullable
     public String getUserEmail() {
-        String output = runGitCommand("config", "user.email");
-        if (output != null) {
-            return output.trim();
-        }
-        return null;
+        return getConfigValue("user.email");
     }
 
     /**
-     * Run `git config user.email example@example.com` and return the current configured user.
+     * Same as `git config user.email example@example.com`, change the current configured user.
      *
      * @param fullEmail the current email of the user, for example "example@example.com".
+     * @param global true for user setting, false for project setting
      */
     public void setUserEmail(@NotNull String fullEmail, boolean global) {
-        if (global) {
-            runGitCommand("config", "--global", "user.email", fullEmail);
-            // clear the local config, so it won't override our new setting
-            runGitCommand("config", "--unset", "--local", "user.email");
-        } else {
-            runGitCommand("config", "user.email", fullEmail);
-        }
+        setConfigValue("user.email", fullEmail, global);
     }
 
     /**
-     * Run `git config user.name` and return the current configured user.
+     * Same as `git config user.name`, return the current configured user.
      *
      * @return returns the current configured user email or null on error.
      */
     @Nullable
     public String getUserName() {
-        String output = runGitCommand("config", "user.name");
-        if (output != null) {
-            return output.trim();
-        }
-        return null;
+        return getConfigValue("user.name");
     }
 
     /**
-     * Run `git config user.name Bub` and return the current configured user.
+     * Same as `git config user.name Bub`, change the current configured user.
      *
      * @param fullName the current name of the user, for example "Bub".
      * @param global true for user setting, false for project setting
      */
     public void setUserName(@NotNull String fullName, boolean global) {
-        if (global) {
-            runGitCommand("config", "--global", "user.name", fullName);
-            // clear the local config, so it won't override our new setting
-            runGitCommand("config", "--local", "--unset", "user.name");
-        } else {
-            runGitCommand("config", "user.name", fullName);
-        }
+        setConfigValue("user.name", fullName, global);
     }
 
     /**
@@ -101,54 +85,250 @@ public class GitRunner {
      * @param global true for user setting, false for project setting
      */
     public void unsetUserAndEmail(boolean global) {
-        if (global) {
-            runGitCommand("config", "--global", "--unset", "user.name");
-            runGitCommand("config", "--global", "--unset", "user.email");
-        } else {
-            runGitCommand("config", "--local", "--unset", "user.name");
-            runGitCommand("config", "--local", "--unset", "user.email");
+        unsetConfigValues(global, "user.name", "user.email");
+    }
+
+    /**
+     * Run `git config --list -z --show-origin --show-scope` once, for every key and where it was set.
+     *
+     * @return all of git's config, or null on error.
+     */
+    @Override
+    @Nullable
+    public GitConfigSnapshot getConfigSnapshot() {
+        GitExecutable git = GitExecutableResolver.getInstance().resolve();
+        if (git == null || !git.supportsShowScope()) {
+            // don't spawn git just to have it reject the flag
+            return null;
+        }
+        String output = runGitCommand("config", "--list", "-z", "--show-origin", "--show-scope");
+        if (output == null) {
+            return null;
         }
+        return GitConfigSnapshot.parse(output);
     }
 
     /**
-     * Calculate git's path.
+     * Find the value git uses for a key, and where it was set.
+     * Reads the config files directly when possible, and only asks git when the files alone can't answer,
+     * for example because of includes or GIT_CONFIG, so a key that isn't set costs no git process either.
+     * The system config isn't read directly, a key set only there is seen as unset.
      *
-     * @return path of the git executable, including the executable name.
+     * @param key for example "user.email".
+     * @return the entry, or null if it isn't set.
      */
+    @Override
     @Nullable
-    private String findGitExePath() {
+    public GitConfigEntry getConfigEntry(@NotNull String key) {
+        GitConfigSnapshot snapshot = nativeGitConfig.snapshot();
+        if (snapshot != null) {
+            // the user and repository files were read whole, so a missing key really is unset
+            return snapshot.getEntry(key);
+        }
+        snapshot = getConfigSnapshot();
+        if (snapshot != null) {
+            return snapshot.getEntry(key);
+        }
+        // git older than 2.26 doesn't know --show-scope, ask for the one value
+        String value = runGitCommand("config", key);
+        if (value == null) {
+            return null;
+        }
+        return new GitConfigEntry(GitConfigSnapshot.normalizeKey(key), value, GitConfigScope.UNKNOWN, null);
+    }
 
-        if (StringUtil.isNotEmpty(gitPathCache)) {
-            return gitPathCache;
+    /**
+     * Read a config value.
+     *
+     * @param key for example "user.email".
+     * @return trimmed value, or null if it isn't set.
+     */
+    @Nullable
+    private String getConfigValue(String key) {
+        GitConfigEntry entry = getConfigEntry(key);
+        if (entry != null && entry.getValue() != null) {
+            return entry.getValue().trim();
         }
+        return null;
+    }
 
-        String path = EnvironmentUtil.getValue("PATH");
-        if (StringUtil.isEmpty(path)) {
-            return null;
+    /**
+     * Start collecting config changes that are written together, see {@link GitConfigTransaction}.
+     *
+     * @return new empty transaction.
+     */
+    @Override
+    @NotNull
+    public GitConfigTransaction beginTransaction() {
+        return new GitConfigTransaction(this);
+    }
+
+    /**
+     * Change the pair's name and email together, in one transaction, see {@link GitConfigTransaction#setUserNameAndEmail}.
+     *
+     * @param name   new user.name, or null to leave it.
+     * @param email  new user.email, or null to leave it.
+     * @param global true for user setting, false for project setting
+     * @return true if everything was written.
+     */
+    public boolean setUserNameAndEmail(@Nullable String name, @Nullable String email, boolean global) {
+        return beginTransaction().setUserNameAndEmail(name, email, global).commit();
+    }
+
+    /**
+     * Write a config value.
+     *
+     * @param key    for example "user.email".
+     * @param value  new value.
+     * @param global true for user setting, false for project setting
+     */
+    private void setConfigValue(String key, String value, boolean global) {
+        beginTransaction().setUserValue(key, value, global).commit();
+    }
+
+    /**
+     * Remove config values.
+     *
+     * @param global true for user setting, false for project setting
+     * @param keys   for example "user.name", "user.email".
+     */
+    private void unsetConfigValues(boolean global, String... keys) {
+        GitConfigTransaction transaction = beginTransaction();
+        for (String key : keys) {
+            transaction.unset(global ? GitConfigScope.GLOBAL : GitConfigScope.LOCAL, key);
         }
+        transaction.commit();
+    }
 
-        String[] dirs;
-        if (SystemInfo.isWindows) {
-            dirs = path.split(";");
-        } else {
-            dirs = path.split(":");
+    /**
+     * Change how long writes keep trying while git config is busy.
+     *
+     * @param retryPolicy retry policy, {@link GitRetryPolicy#DEFAULT} unless changed.
+     */
+    public void setRetryPolicy(@NotNull GitRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Apply a transaction, without running git if the config files can be written directly.
+     * While the config is locked by someone else, or git times out, it's tried again following the {@link GitRetryPolicy}.
+     *
+     * @param transaction changes to make.
+     * @return true if every change was applied, false if nothing was.
+     */
+    @Override
+    public boolean commit(@NotNull GitConfigTransaction transaction) {
+        final List<GitConfigTransaction.Operation> operations = transaction.getOperations();
+        if (operations.isEmpty()) {
+            return true;
         }
+        return retryPolicy.run(TAG, new GitRetryPolicy.Attempt() {
+            @Override
+            public boolean run() throws GitConfigBusyException {
+                return tryCommit(operations);
+            }
+        });
+    }
+
+    /**
+     * Apply the changes once, natively if possible.
+     *
+     * @throws GitConfigBusyException if the config is locked or git timed out, nothing was changed.
+     */
+    private boolean tryCommit(List<GitConfigTransaction.Operation> operations) throws GitConfigBusyException {
+        if (nativeGitConfig.apply(operations)) {
+            return true;
+        }
+        return commitWithGit(operations);
+    }
 
-        for (String dir : dirs) {
-            String filename;
-            if (SystemInfo.isWindows) {
-                filename = dir + "/git.exe";
+    /**
+     * Apply a transaction one `git config` at a time, and undo the applied changes if one fails.
+     *
+     * @param operations changes to make.
+     * @return true if every change was applied.
+     * @throws GitConfigBusyException if the config is locked or git timed out, applied changes were undone.
+     */
+    private boolean commitWithGit(List<GitConfigTransaction.Operation> operations) throws GitConfigBusyException {
+        // remember the values being replaced, to undo them
+        GitConfigSnapshot before = getConfigSnapshot();
+        List<GitConfigTransaction.Operation> undo = new ArrayList<GitConfigTransaction.Operation>(operations.size());
+        for (GitConfigTransaction.Operation operation : operations) {
+            String previous;
+            if (before != null) {
+                previous = before.get(operation.key, operation.scope);
             } else {
-                filename = dir + "/git";
+                previous = runGitCommand("config", operation.scopeFlag(), operation.key);
+                if (previous != null && previous.endsWith("\n")) {
+                    previous = previous.substring(0, previous.length() - 1);
+                }
+            }
+            boolean applied;
+            try {
+                applied = runConfigOperation(operation);
+            } catch (GitConfigBusyException e) {
+                undo(undo);
+                throw e;
             }
-            File file = new File(filename);
-            if (file.exists() && file.isFile()) {
-                gitPathCache = filename;
-                return gitPathCache;
+            if (!applied) {
+                undo(undo);
+                return false;
             }
+            undo.add(new GitConfigTransaction.Operation(operation.scope, operation.key, previous));
         }
+        return true;
+    }
 
-        return null;
+    private void undo(List<GitConfigTransaction.Operation> undo) {
+        for (int i = undo.size() - 1; i >= 0; i--) {
+            try {
+                runConfigOperation(undo.get(i));
+            } catch (GitConfigBusyException e) {
+                GitCommandJournal.getInstance().note(TAG + " couldn't undo " + undo.get(i).key + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Run `git config --global|--local key value` or `git config --global|--local --unset-all key`.
+     *
+     * @return true if the key now has the value, or isn't set anymore.
+     * @throws GitConfigBusyException if the config is locked or git timed out.
+     */
+    private boolean runConfigOperation(GitConfigTransaction.Operation operation) throws GitConfigBusyException {
+        List<String> parameters;
+        if (operation.isUnset()) {
+            parameters = Arrays.asList("config", operation.scopeFlag(), "--unset-all", operation.key);
+        } else {
+            parameters = Arrays.asList("config", operation.scopeFlag(), operation.key, operation.value);
+        }
+        ProcessOutput output = runGitProcess(parameters);
+        if (output == null) {
+            return false;
+        }
+        if (isBusy(output)) {
+            throw new GitConfigBusyException("git " + parameters + " " + (output.isTimeout() ? "timed out" : output.getStderr().trim()));
+        }
+        // 5 means it wasn't set
+        return output.getExitCode() == 0 || (operation.isUnset() && output.getExitCode() == 5);
+    }
+
+    /**
+     * Decide if git failed only because it was busy, and trying again may work.
+     * Git runs with LC_ALL=C, so the messages are always English.
+     *
+     * @param output output of a finished or timed out git.
+     * @return true if another writer held the lock, or git timed out.
+     */
+    static boolean isBusy(@NotNull ProcessOutput output) {
+        if (output.isTimeout()) {
+            return true;
+        }
+        if (output.getExitCode() == 0) {
+            return false;
+        }
+        String err = output.getStderr();
+        return err.contains("could not lock config file") || err.contains(".lock': File exists");
     }
 
     /**
@@ -172,47 +352,85 @@ public class GitRunner {
      */
     @Nullable
     private String runGitCommand(List<String> parameters) {
-        String gitPath = findGitExePath();
-        if (StringUtil.isEmpty(gitPath)) {
+        ProcessOutput processOutput = runGitProcess(parameters);
+        if (processOutput == null || processOutput.isTimeout() || processOutput.isCancelled()) {
+            return null;
+        }
+
+        if (processOutput.getExitCode() != 0) {
+            // stderr is in the GitCommandJournal
+            return null;
+        }
+
+        return processOutput.getStdout();
+    }
+
+    /**
+     * The part of every command that stays the same, built again only if git moved.
+     *
+     * @param git git to run.
+     * @return template for this runner.
+     */
+    @NotNull
+    private GitCommandTemplate getCommandTemplate(@NotNull GitExecutable git) {
+        GitCommandTemplate template = commandTemplate;
+        if (template == null || !template.getExePath().equals(git.getPath())) {
+            template = new GitCommandTemplate(git.getPath(), projectBasePath, EnvironmentUtil.getEnvironmentMap());
+            commandTemplate = template;
+        }
+        return template;
+    }
+
+    /**
+     * Run git and capture the exit code and output.
+     *
+     * @param parameters List of parameters after `git` to run.
+     * @return output of the git process, even if it timed out or was cancelled, or null if it couldn't be run.
+     */
+    @Nullable
+    private ProcessOutput runGitProcess(List<String> parameters) {
+        GitExecutable git = GitExecutableResolver.getInstance().resolve();
+        if (git == null) {
             // git will fail, because we can't find it, so we exit early
             return null;
         }
 
         // prepare executable command
-        GeneralCommandLine gitConfigCommand = new GeneralCommandLine();
-        Map<String, String> env = EnvironmentUtil.getEnvironmentMap();
-        gitConfigCommand.getEnvironment().clear();
-        gitConfigCommand.getEnvironment().putAll(env);
-        gitConfigCommand.setWorkDirectory(projectBasePath);
-        gitConfigCommand.setExePath(gitPath);
-        gitConfigCommand.addParameters(parameters);
+        GeneralCommandLine gitConfigCommand = getCommandTemplate(git).newCommandLine(parameters);
 
         // execute command
         CapturingProcessHandler processHandler;
         try {
             processHandler = new CapturingProcessHandler(gitConfigCommand);
         } catch (ExecutionException e) {
-            System.out.println(TAG + " OS error: " + e.getMessage());
+            GitCommandJournal.getInstance().record(describe(parameters), projectBasePath, 0,
+                    GitCommandJournal.NO_EXIT_CODE, false, "OS error: " + e.getMessage());
+            // git may have moved, look for it again next time
+            GitExecutableResolver.getInstance().invalidate();
             return null;
         }
 
-        ProcessOutput processOutput = processHandler.runProcess(1000);
-        if (processOutput.isTimeout()) {
-            System.out.println(TAG + " " + gitConfigCommand.toString() + " Timed out after 1 second.");
-            return null;
-        }
+        long start = System.nanoTime();
+        ProcessOutput processOutput = processHandler.runProcess(PROCESS_TIMEOUT_MILLIS);
+        long nanos = System.nanoTime() - start;
+        GitMetrics.getInstance().recordCommand(parameters.isEmpty() ? "" : parameters.get(0),
+                processOutput.getExitCode(), processOutput.isTimeout(), nanos);
+        GitCommandJournal.getInstance().record(describe(parameters), projectBasePath, nanos,
+                processOutput.getExitCode(), processOutput.isTimeout(), processOutput.getStderr());
 
-        String output = processOutput.getStdout();
+        return processOutput;
+    }
 
-        if (processOutput.getExitCode() != 0) {
-            String err = processOutput.getStderr();
-            if (err.length() > 0) {
-                System.out.println(TAG + " " + gitConfigCommand.toString() + " caused Git error: " + processOutput.getStderr());
-            }
-            return null;
+    /**
+     * @return for example "git config --local user.email".
+     */
+    @NotNull
+    private static String describe(List<String> parameters) {
+        StringBuilder command = new StringBuilder("git");
+        for (String parameter : parameters) {
+            command.append(' ').append(parameter);
         }
-
-        return output;
+        return command.toString();
     }
 
 }
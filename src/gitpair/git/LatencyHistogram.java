@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long something took, in buckets that grow with the latency, so percentiles can be read
+ * without keeping every sample.  Every power of two of microseconds is split into four buckets,
+ * so a percentile is never off by more than a quarter.
+ * Recording is lock free, and safe from any thread.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    // four buckets for each power of two up to about 12 days
+    private static final int BUCKET_COUNT = SUB_BUCKETS * 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Record one sample.
+     *
+     * @param nanos how long it took.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketOf(nanos / 1000));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Estimate a percentile.
+     *
+     * @param percentile from 0 to 100, for example 99 for p99.
+     * @return the latency that many percent of samples were at or under, rounded up to the bucket, 0 if empty.
+     */
+    public long getPercentileNanos(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i) * 1000, maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * @param micros latency.
+     * @return the bucket it's counted in.
+     */
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKET_COUNT - 1, SUB_BUCKETS * (exponent - 1) + sub);
+    }
+
+    /**
+     * @param bucket a bucket.
+     * @return the largest latency counted in it, in microseconds.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + sub) << (exponent - 2);
+        return lower + (1L << (exponent - 2)) - 1;
+    }
+
+    /**
+     * @return for example "n=12 p50=3.2ms p99=8.1ms max=9.0ms".
+     */
+    @Override
+    public String toString() {
+        return "n=" + getCount()
+                + " p50=" + formatMillis(getPercentileNanos(50))
+                + " p99=" + formatMillis(getPercentileNanos(99))
+                + " max=" + formatMillis(getMaxNanos());
+    }
+
+    static String formatMillis(long nanos) {
+        // diagnostics read the same everywhere, "1.5ms" not "1,5ms"
+        return String.format(Locale.ROOT, "%.1fms", nanos / 1000000.0);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Reads and writes the global and local config files without ever running git, see {@link NativeGitConfig}.
+ * When the files alone can't answer (includes, GIT_CONFIG and friends, worktree config) reads return null
+ * and writes fail, where {@link GitRunner} would ask git instead.
+ */
+public class NativeGitBackend implements GitBackend {
+
+    private static final String TAG = NativeGitBackend.class.getSimpleName();
+    private final NativeGitConfig nativeGitConfig;
+    private volatile GitRetryPolicy retryPolicy = GitRetryPolicy.DEFAULT;
+
+    /**
+     * Initialize with the root path for the project.
+     *
+     * @param projectBasePath git root path, folder that contains .git.
+     */
+    public NativeGitBackend(String projectBasePath) {
+        this.nativeGitConfig = new NativeGitConfig(projectBasePath);
+    }
+
+    /**
+     * The global and local config, the system config isn't read.
+     *
+     * @return snapshot, or null if the files alone can't tell.
+     */
+    @Override
+    @Nullable
+    public GitConfigSnapshot getConfigSnapshot() {
+        return nativeGitConfig.snapshot();
+    }
+
+    @Override
+    @Nullable
+    public GitConfigEntry getConfigEntry(@NotNull String key) {
+        GitConfigSnapshot snapshot = nativeGitConfig.snapshot();
+        return snapshot == null ? null : snapshot.getEntry(key);
+    }
+
+    @Override
+    @NotNull
+    public GitConfigTransaction beginTransaction() {
+        return new GitConfigTransaction(this);
+    }
+
+    /**
+     * Change how long writes keep trying while git config is locked.
+     *
+     * @param retryPolicy retry policy, {@link GitRetryPolicy#DEFAULT} unless changed.
+     */
+    public void setRetryPolicy(@NotNull GitRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Override
+    public boolean commit(@NotNull GitConfigTransaction transaction) {
+        final List<GitConfigTransaction.Operation> operations = transaction.getOperations();
+        if (operations.isEmpty()) {
+            return true;
+        }
+        return retryPolicy.run(TAG, new GitRetryPolicy.Attempt() {
+            @Override
+            public boolean run() throws GitConfigBusyException {
+                return nativeGitConfig.apply(operations);
+            }
+        });
+    }
+}
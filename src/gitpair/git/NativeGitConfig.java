@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.EnvironmentUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads and writes the local (.git/config) and global (~/.gitconfig) git config files without running git.
+ * Anything it can't answer the way git would (includes, config redirected by the environment, no repository)
+ * is reported as null or false, so the caller can fall back to running git.
+ */
+public class NativeGitConfig {
+
+    private static final String TAG = NativeGitConfig.class.getSimpleName();
+
+    /**
+     * When any of these are set git doesn't read the usual files.
+     */
+    private static final String[] REDIRECTING_VARIABLES = {
+            "GIT_DIR", "GIT_COMMON_DIR", "GIT_CONFIG", "GIT_CONFIG_GLOBAL", "GIT_CONFIG_PARAMETERS", "GIT_CONFIG_COUNT",
+    };
+
+    private final File workingDirectory;
+
+    /**
+     * Config files as seen by git running in a directory.
+     *
+     * @param workingDirectory folder git would run in, usually the project's base path.
+     */
+    public NativeGitConfig(@NotNull String workingDirectory) {
+        this.workingDirectory = new File(workingDirectory).getAbsoluteFile();
+    }
+
+    /**
+     * Get a value the same way `git config key` would, from the local config, then the global config.
+     *
+     * @param key for example "user.email".
+     * @return the value, or null if it isn't set in these files or git has to be asked.
+     */
+    @Nullable
+    String get(@NotNull String key) {
+        GitConfigSnapshot snapshot = snapshot();
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.get(key);
+    }
+
+    /**
+     * Read the global and local config files, like `git config --list --show-origin --show-scope` without the system config.
+     *
+     * @return snapshot of the global and local entries, or null if git has to be asked.
+     */
+    @Nullable
+    public GitConfigSnapshot snapshot() {
+        if (!isSupported()) {
+            return null;
+        }
+        List<GitConfigEntry> entries = new ArrayList<GitConfigEntry>();
+        try {
+            // in the order git reads them, later entries win
+            for (File file : getGlobalConfigFiles()) {
+                if (!addEntries(entries, file, GitConfigScope.GLOBAL)) {
+                    return null;
+                }
+            }
+            File localFile = getLocalConfigFile();
+            if (localFile != null && !addEntries(entries, localFile, GitConfigScope.LOCAL)) {
+                return null;
+            }
+        } catch (IOException e) {
+            GitCommandJournal.getInstance().note(TAG + " couldn't read git config: " + e.getMessage());
+            return null;
+        }
+        return new GitConfigSnapshot(entries);
+    }
+
+    /**
+     * Add the entries of one config file.
+     *
+     * @return false if the file needs git to be read correctly.
+     */
+    private static boolean addEntries(List<GitConfigEntry> entries, File file, GitConfigScope scope) throws IOException {
+        GitConfigFile config = GitConfigFile.read(file);
+        if (config == null || config.hasIncludes()) {
+            return false;
+        }
+        if (scope == GitConfigScope.LOCAL && isWorktreeConfigEnabled(config)) {
+            return false;
+        }
+        String origin = "file:" + file.getPath();
+        for (String[] keyValue : config.list()) {
+            entries.add(new GitConfigEntry(keyValue[0], keyValue[1], scope, origin));
+        }
+        return true;
+    }
+
+    /**
+     * Set a value like `git config [--global] key value`.
+     *
+     * @param key    for example "user.email".
+     * @param value  new value.
+     * @param global true for the user's ~/.gitconfig, false for the repository's .git/config.
+     * @return true if written, false if git should be asked to do it instead.
+     */
+    boolean set(@NotNull String key, @NotNull String value, boolean global) {
+        GitConfigScope scope = global ? GitConfigScope.GLOBAL : GitConfigScope.LOCAL;
+        return applyOrBackOff(Collections.singletonList(new GitConfigTransaction.Operation(scope, key, value)));
+    }
+
+    /**
+     * Remove values like `git config [--global] --unset key`, all in one write.
+     *
+     * @param global true for the user's ~/.gitconfig, false for the repository's .git/config.
+     * @param keys   for example "user.name", "user.email".
+     * @return true if the keys are no longer in the file, false if git should be asked to do it instead.
+     */
+    boolean unset(boolean global, @NotNull String... keys) {
+        GitConfigScope scope = global ? GitConfigScope.GLOBAL : GitConfigScope.LOCAL;
+        List<GitConfigTransaction.Operation> operations = new ArrayList<GitConfigTransaction.Operation>(keys.length);
+        for (String key : keys) {
+            operations.add(new GitConfigTransaction.Operation(scope, key, null));
+        }
+        return applyOrBackOff(operations);
+    }
+
+    private boolean applyOrBackOff(List<GitConfigTransaction.Operation> operations) {
+        try {
+            return apply(operations);
+        } catch (GitConfigBusyException e) {
+            GitCommandJournal.getInstance().note(TAG + " " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Apply a transaction's changes with one locked rewrite per config file.
+     * Every file is locked before any is written, and files already written are put back if a later one fails.
+     *
+     * @param operations changes to global and local config.
+     * @return true if applied, false if nothing was changed and git should be asked to do it instead.
+     * @throws GitConfigBusyException if a config file is locked, nothing was changed.
+     */
+    boolean apply(@NotNull List<GitConfigTransaction.Operation> operations) throws GitConfigBusyException {
+        if (!isSupported()) {
+            return false;
+        }
+        // always global then local, so two writers lock in the same order
+        List<File> files = new ArrayList<File>(2);
+        List<List<GitConfigTransaction.Operation>> fileOperations = new ArrayList<List<GitConfigTransaction.Operation>>(2);
+        for (GitConfigScope scope : new GitConfigScope[]{GitConfigScope.GLOBAL, GitConfigScope.LOCAL}) {
+            List<GitConfigTransaction.Operation> scopeOperations = new ArrayList<GitConfigTransaction.Operation>();
+            boolean onlyUnsets = true;
+            for (GitConfigTransaction.Operation operation : operations) {
+                if (operation.scope == scope) {
+                    scopeOperations.add(operation);
+                    onlyUnsets &= operation.isUnset();
+                }
+            }
+            if (scopeOperations.isEmpty()) {
+                continue;
+            }
+            File file = scope == GitConfigScope.GLOBAL ? getGlobalConfigFileForWriting() : getLocalConfigFile();
+            if (file == null) {
+                if (onlyUnsets) {
+                    // not in a repository, so there's no local value to clear
+                    continue;
+                }
+                return false;
+            }
+            files.add(file);
+            fileOperations.add(scopeOperations);
+        }
+
+        List<GitConfigLock> locks = new ArrayList<GitConfigLock>(files.size());
+        try {
+            for (File file : files) {
+                locks.add(GitConfigLock.acquire(file));
+            }
+        } catch (GitConfigBusyException e) {
+            // git would be just as stuck, let the caller decide when to try again
+            releaseAll(locks);
+            throw e;
+        } catch (IOException e) {
+            GitCommandJournal.getInstance().note(TAG + " " + e.getMessage());
+            releaseAll(locks);
+            return false;
+        }
+
+        List<File> written = new ArrayList<File>(files.size());
+        List<String> originals = new ArrayList<String>(files.size());
+        try {
+            // read after locking, so a change git made in the meantime isn't lost
+            List<GitConfigFile> configs = new ArrayList<GitConfigFile>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                String original = readText(files.get(i));
+                GitConfigFile config = GitConfigFile.parse(original == null ? "" : original);
+                if (config == null) {
+                    return false;
+                }
+                for (GitConfigTransaction.Operation operation : fileOperations.get(i)) {
+                    boolean changed = operation.isUnset() ? config.unset(operation.key) : config.set(operation.key, operation.value);
+                    if (!changed) {
+                        return false;
+                    }
+                }
+                configs.add(config);
+                originals.add(original);
+            }
+            for (int i = 0; i < files.size(); i++) {
+                if (configs.get(i).isModified()) {
+                    locks.get(i).commit(configs.get(i).toText());
+                    written.add(files.get(i));
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            GitCommandJournal.getInstance().note(TAG + " couldn't write git config: " + e.getMessage());
+            for (int i = written.size() - 1; i >= 0; i--) {
+                restore(written.get(i), originals.get(files.indexOf(written.get(i))));
+            }
+            return false;
+        } finally {
+            releaseAll(locks);
+        }
+    }
+
+    /**
+     * Put a config file back the way it was before a failed transaction.
+     *
+     * @param original contents, or null if the file didn't exist.
+     */
+    private static void restore(File file, @Nullable String original) {
+        try {
+            GitConfigLock lock = GitConfigLock.acquire(file);
+            try {
+                if (original == null) {
+                    Files.deleteIfExists(file.toPath());
+                } else {
+                    lock.commit(original);
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            GitCommandJournal.getInstance().note(TAG + " couldn't restore " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void releaseAll(List<GitConfigLock> locks) {
+        for (GitConfigLock lock : locks) {
+            lock.release();
+        }
+    }
+
+    /**
+     * The files git could read the user from, to watch for changes made outside the IDE.
+     *
+     * @return global config files, and the repository's config file if there is one.
+     */
+    @NotNull
+    public List<File> getConfigFiles() {
+        List<File> files = new ArrayList<File>(getGlobalConfigFiles());
+        File local = getLocalConfigFile();
+        if (local != null) {
+            files.add(local);
+        }
+        return files;
+    }
+
+    /**
+     * Find the repository's config file, looking up from the working directory like git does.
+     * Follows ".git" files (submodules, worktrees) to the real git directory.
+     *
+     * @return the config file, or null if the working directory isn't in a repository.
+     */
+    @Nullable
+    File getLocalConfigFile() {
+        for (File dir = workingDirectory; dir != null; dir = dir.getParentFile()) {
+            File dotGit = new File(dir, ".git");
+            File gitDir;
+            if (dotGit.isDirectory()) {
+                gitDir = dotGit;
+            } else if (dotGit.isFile()) {
+                String target = readFirstLine(dotGit);
+                if (target == null || !target.startsWith("gitdir:")) {
+                    return null;
+                }
+                gitDir = resolve(dir, target.substring("gitdir:".length()).trim());
+            } else {
+                continue;
+            }
+            File commonDirFile = new File(gitDir, "commondir");
+            if (commonDirFile.isFile()) {
+                // linked worktrees share the main repository's config
+                String commonDir = readFirstLine(commonDirFile);
+                if (commonDir == null) {
+                    return null;
+                }
+                gitDir = resolve(gitDir, commonDir.trim());
+            }
+            return new File(gitDir, "config");
+        }
+        return null;
+    }
+
+    /**
+     * The global config files, in the order git reads them.
+     *
+     * @return $XDG_CONFIG_HOME/git/config and ~/.gitconfig.
+     */
+    @NotNull
+    List<File> getGlobalConfigFiles() {
+        List<File> files = new ArrayList<File>(2);
+        String xdgConfigHome = EnvironmentUtil.getValue("XDG_CONFIG_HOME");
+        if (StringUtil.isNotEmpty(xdgConfigHome)) {
+            files.add(new File(xdgConfigHome, "git/config"));
+        } else {
+            files.add(new File(getHome(), ".config/git/config"));
+        }
+        files.add(new File(getHome(), ".gitconfig"));
+        return files;
+    }
+
+    /**
+     * Git writes ~/.gitconfig, unless only the XDG file exists.
+     */
+    private File getGlobalConfigFileForWriting() {
+        List<File> files = getGlobalConfigFiles();
+        File xdg = files.get(0);
+        File home = files.get(1);
+        if (!home.exists() && xdg.exists()) {
+            return xdg;
+        }
+        return home;
+    }
+
+    /**
+     * Is git's config where we expect it?
+     *
+     * @return false if the environment points git at other files.
+     */
+    private static boolean isSupported() {
+        for (String variable : REDIRECTING_VARIABLES) {
+            if (StringUtil.isNotEmpty(EnvironmentUtil.getValue(variable))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * With extensions.worktreeConfig, config.worktree can override the local config.
+     */
+    private static boolean isWorktreeConfigEnabled(GitConfigFile local) {
+        String worktreeConfig = local.get("extensions.worktreeConfig");
+        if (worktreeConfig == null) {
+            return false;
+        }
+        worktreeConfig = worktreeConfig.toLowerCase();
+        return "true".equals(worktreeConfig) || "yes".equals(worktreeConfig) || "on".equals(worktreeConfig) || "1".equals(worktreeConfig);
+    }
+
+    private static File getHome() {
+        String home = EnvironmentUtil.getValue("HOME");
+        if (StringUtil.isEmpty(home)) {
+            home = System.getProperty("user.home");
+        }
+        return new File(home);
+    }
+
+    private static File resolve(File base, String path) {
+        File file = new File(path);
+        if (!file.isAbsolute()) {
+            file = new File(base, path);
+        }
+        return file;
+    }
+
+    /**
+     * @return contents of the file, or null if it doesn't exist.
+     */
+    @Nullable
+    private static String readText(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Nullable
+    private static String readFirstLine(File file) {
+        try {
+            String contents = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            int newline = contents.indexOf('\n');
+            return newline < 0 ? contents : contents.substring(0, newline);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import gitpair.git.GitExecutor;
+import gitpair.git.GitMetrics;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Writes the pair to git once clicking stops, instead of after every toggle.
+ * Each change waits for a quiet period, and only the pair as it is at the end of it is written.
+ * {@link #flush()} writes right away, for when the popup closes or a commit starts.
+ */
+class CoalescingPairWriter {
+
+    private final Write write;
+    private final long quietMillis;
+
+    private int pendingChanges;
+    private CompletableFuture<Boolean> pendingResult;
+    private ScheduledFuture<?> pendingTimer;
+    private CompletableFuture<Boolean> lastResult = CompletableFuture.completedFuture(true);
+
+    /**
+     * @param write       writes whatever the pair is when it's called.
+     * @param quietMillis how long to wait after the last change.
+     */
+    CoalescingPairWriter(@NotNull Write write, long quietMillis) {
+        this.write = write;
+        this.quietMillis = quietMillis;
+    }
+
+    /**
+     * The pair changed, write it after the quiet period, unless it changes again first.
+     *
+     * @return completes when the write with this change in it is done, true if git has it.
+     */
+    @NotNull
+    synchronized CompletableFuture<Boolean> changed() {
+        pendingChanges++;
+        if (pendingResult == null) {
+            pendingResult = new CompletableFuture<Boolean>();
+        }
+        if (pendingTimer != null) {
+            pendingTimer.cancel(false);
+        }
+        pendingTimer = GitExecutor.getInstance().schedule(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, quietMillis);
+        return pendingResult;
+    }
+
+    /**
+     * Write now if there are changes waiting.
+     *
+     * @return completes when git has the pair, or with the last write's result if nothing is waiting,
+     * right away if that write is done.
+     */
+    @NotNull
+    CompletableFuture<Boolean> flush() {
+        final CompletableFuture<Boolean> result;
+        int changes;
+        synchronized (this) {
+            if (pendingResult == null) {
+                // the last write, done or not, says whether git has the pair
+                return lastResult;
+            }
+            if (pendingTimer != null) {
+                pendingTimer.cancel(false);
+                pendingTimer = null;
+            }
+            result = pendingResult;
+            changes = pendingChanges;
+            pendingResult = null;
+            pendingChanges = 0;
+            lastResult = result;
+        }
+        GitMetrics.getInstance().recordPairWrite(changes);
+        write.write().whenComplete(new BiConsumer<Boolean, Throwable>() {
+            @Override
+            public void accept(Boolean written, Throwable error) {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(written);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return true if a change hasn't been written yet.
+     */
+    synchronized boolean hasPendingChanges() {
+        return pendingResult != null;
+    }
+
+    /**
+     * Writes the pair to git.
+     */
+    interface Write {
+        /**
+         * @return completes with true when git has the pair.
+         */
+        @NotNull
+        CompletableFuture<Boolean> write();
+    }
+}
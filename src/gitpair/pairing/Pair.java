@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Who is paired at one moment, and what git calls them.
+ * Immutable, so any thread can read it without locking; a change makes a new Pair.
+ */
+final class Pair {
+
+    private final List<TeamMember> members;
+    private final PairIdentity identity;
+
+    /**
+     * @param members  team members in the pair, copied.
+     * @param identity name and email of those members.
+     */
+    Pair(@NotNull List<TeamMember> members, @NotNull PairIdentity identity) {
+        this.members = Collections.unmodifiableList(new ArrayList<TeamMember>(members));
+        this.identity = identity;
+    }
+
+    /**
+     * @return unmodifiable list of paired team members.
+     */
+    @NotNull
+    List<TeamMember> getMembers() {
+        return members;
+    }
+
+    @NotNull
+    PairIdentity getIdentity() {
+        return identity;
+    }
+
+    boolean contains(TeamMember teamMember) {
+        return members.contains(teamMember);
+    }
+
+    /**
+     * The pair with a team member added, or removed if they were already in it.
+     *
+     * @param teamMember team member to turn on or off.
+     * @return new members, this pair is unchanged.
+     */
+    @NotNull
+    List<TeamMember> toggled(@NotNull TeamMember teamMember) {
+        List<TeamMember> toggled = new ArrayList<TeamMember>(members);
+        if (!toggled.remove(teamMember)) {
+            toggled.add(teamMember);
+        }
+        return toggled;
+    }
+}
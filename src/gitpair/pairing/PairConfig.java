@@ -11,25 +11,97 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The team members that can pair.
+ * A project's .pairs can be layered over the user's ~/.pairs, see {@link #PairConfig(PairConfig, PairConfig)}.
  */
 public class PairConfig {
 
     private String prefix;
     private String domain;
     private List<TeamMember> teamMembers = new ArrayList<TeamMember>();
-    private boolean shouldChangeGlobalUser;
+    // null when the .pairs doesn't say, so a layer under it can
+    private Boolean shouldChangeGlobalUser;
+    private Boolean shouldMatchDomain;
+    // "email_addresses" by initials, kept so a layer over this one can give them to the members under it
+    private Map<String, String> emailAddresses = Collections.emptyMap();
+    private Map<String, List<TeamMember>> membersByLocalPart = Collections.emptyMap();
+    private Map<String, List<TeamMember>> membersByEmail = Collections.emptyMap();
+    private Map<TeamMember, Integer> ordinals = Collections.emptyMap();
 
     /**
      * Initialize the pair configuration.
      *
-     * @param yamlSource contents of the .pairs file.
+     * @param yamlSource contents of the .pairs file, see {@link PairsFileLoader}.
      */
-    public PairConfig(String yamlSource) {
+    public PairConfig(CharSequence yamlSource) {
         configureWithYamlSource(yamlSource);
+        buildEmailIndex();
+        buildOrdinals();
+    }
+
+    /**
+     * Layer a project's .pairs over the user's.
+     * Each email setting, "global", and each of "email_addresses" comes from the project if it has it,
+     * and from the user's .pairs if not.
+     * Team members are matched by initials, a project member replaces the user's first member with the same initials
+     * in the same place, and the project's other members are added after.
+     * A project member without an email gets it from the user's "email_addresses".
+     * Only the members the project changed are indexed, the rest of the index is the user's.
+     *
+     * @param base     usually ~/.pairs.
+     * @param override usually the project's .pairs.
+     */
+    public PairConfig(@NotNull PairConfig base, @NotNull PairConfig override) {
+        prefix = override.prefix != null ? override.prefix : base.prefix;
+        domain = override.domain != null ? override.domain : base.domain;
+        shouldChangeGlobalUser = override.shouldChangeGlobalUser != null ? override.shouldChangeGlobalUser : base.shouldChangeGlobalUser;
+        shouldMatchDomain = override.shouldMatchDomain != null ? override.shouldMatchDomain : base.shouldMatchDomain;
+        emailAddresses = new HashMap<String, String>(base.emailAddresses);
+        emailAddresses.putAll(override.emailAddresses);
+        if (override.teamMembers.isEmpty() && override.emailAddresses.isEmpty() && StringUtil.equals(domain, base.domain)) {
+            // the same team, share what the base already indexed
+            teamMembers = base.teamMembers;
+            membersByLocalPart = base.membersByLocalPart;
+            membersByEmail = base.membersByEmail;
+            ordinals = base.ordinals;
+            return;
+        }
+        // like getTeamMemberByInitials(), the first project member with the initials is the one that counts
+        Map<String, TeamMember> overrides = new HashMap<String, TeamMember>(override.teamMembers.size() * 4 / 3 + 1);
+        for (TeamMember member : override.teamMembers) {
+            if (!overrides.containsKey(member.getInitials())) {
+                overrides.put(member.getInitials(), member);
+            }
+        }
+        Set<TeamMember> replacements = Collections.newSetFromMap(new IdentityHashMap<TeamMember, Boolean>());
+        List<TeamMember> merged = new ArrayList<TeamMember>(base.teamMembers.size() + override.teamMembers.size());
+        for (TeamMember member : base.teamMembers) {
+            TeamMember replacement = overrides.get(member.getInitials());
+            if (replacement != null && replacements.add(replacement)) {
+                merged.add(withMissingEmailAddress(replacement, emailAddresses));
+            } else {
+                merged.add(withEmailAddress(member, override.emailAddresses));
+            }
+        }
+        for (TeamMember member : override.teamMembers) {
+            if (!replacements.contains(member)) {
+                merged.add(withMissingEmailAddress(member, emailAddresses));
+            }
+        }
+        teamMembers = merged;
+        buildOrdinals();
+        buildEmailIndex(base);
     }
 
     /**
@@ -45,6 +117,24 @@ public class PairConfig {
         this.domain = domain;
     }
 
+    /**
+     * The team member with their email from "email_addresses", without changing the shared team member.
+     */
+    private static TeamMember withEmailAddress(TeamMember member, Map<String, String> emailAddresses) {
+        String email = emailAddresses.get(member.getInitials());
+        if (email == null || email.equals(member.getEmail())) {
+            return member;
+        }
+        return member.withEmail(email);
+    }
+
+    /**
+     * The project's team member with their email from "email_addresses", if the project didn't give them one.
+     */
+    private static TeamMember withMissingEmailAddress(TeamMember member, Map<String, String> emailAddresses) {
+        return StringUtil.isEmpty(member.getEmail()) ? withEmailAddress(member, emailAddresses) : member;
+    }
+
     /**
      * Generate a new TeamMember for the Yaml node.
      * Members should be formatted like "initials: Full Name; email.address" in the YAML file.
@@ -87,33 +177,34 @@ public class PairConfig {
 
     /**
      * Looks up the person in the email_addresses node by initials,
-     * and assigns the value of the node to the person's email.
+     * and gives the person the value of the node as their email.
      *
      * @param person         a person previously parsed from the "pairs" node
      * @param emailAddresses the "email_addresses" root node
+     * @return a copy of the person with the email, or the same person if there isn't one for them.
      */
-    static void updateTeamMemberEmail(TeamMember person, Node emailAddresses) {
+    static TeamMember teamMemberWithEmail(TeamMember person, Node emailAddresses) {
         if (person == null || emailAddresses == null) {
-            return;
+            return person;
         }
         String initials = person.getInitials();
         if (StringUtil.isEmpty(initials)) {
-            return;
+            return person;
         }
         Node emailNode = emailAddresses.get(person.getInitials());
         if (emailNode == null) {
             // email not found
-            return;
+            return person;
         }
         String email = emailNode.getValue();
         if (email == null) {
-            return;
+            return person;
         }
         email = email.trim();
         if (StringUtil.isEmpty(email)) {
-            return;
+            return person;
         }
-        person.setEmail(email);
+        return person.withEmail(email);
     }
 
     /**
@@ -121,7 +212,7 @@ public class PairConfig {
      *
      * @param yamlSource contents of the .pairs file.
      */
-    private void configureWithYamlSource(String yamlSource) {
+    private void configureWithYamlSource(CharSequence yamlSource) {
         Node root = Yaml.parse(yamlSource);
         if (root != null) {
             Node emailNode = root.get("email");
@@ -134,7 +225,12 @@ public class PairConfig {
                 if (domainNode != null) {
                     domain = domainNode.getValue();
                 }
+                Node matchDomainNode = emailNode.get("match_domain");
+                if (matchDomainNode != null && matchDomainNode.getValue() != null) {
+                    shouldMatchDomain = "true".equals(matchDomainNode.getValue().trim().toLowerCase(Locale.ROOT));
+                }
             }
+            Node email_addresses = root.get("email_addresses");
             Node pairs = root.get("pairs");
             if (pairs != null) {
                 for (Node pairNode : pairs.getChildren()) {
@@ -143,20 +239,214 @@ public class PairConfig {
                         teamMembers.add(teamMember);
                     }
                 }
-                Node email_addresses = root.get("email_addresses");
                 if (email_addresses != null) {
-                    for (TeamMember person : teamMembers) {
-                        updateTeamMemberEmail(person, email_addresses);
+                    for (int i = 0; i < teamMembers.size(); i++) {
+                        teamMembers.set(i, teamMemberWithEmail(teamMembers.get(i), email_addresses));
                     }
                 }
             }
+            if (email_addresses != null) {
+                emailAddresses = emailAddressesByInitials(email_addresses);
+            }
             Node global = root.get("global");
             if (global != null && global.getValue() != null) {
-                if ("true".equals(global.getValue().toLowerCase())) {
-                    shouldChangeGlobalUser = true;
-                }
+                shouldChangeGlobalUser = "true".equals(global.getValue().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    /**
+     * The emails in "email_addresses", the same ones {@link #teamMemberWithEmail} would give.
+     *
+     * @param emailAddresses the "email_addresses" root node.
+     * @return trimmed email by initials, the first one for initials that are there twice.
+     */
+    private static Map<String, String> emailAddressesByInitials(Node emailAddresses) {
+        Map<String, String> byInitials = new HashMap<String, String>(emailAddresses.size() * 4 / 3 + 1);
+        for (Node emailNode : emailAddresses.getChildren()) {
+            String initials = emailNode.getKey();
+            if (StringUtil.isNotEmpty(initials) && !byInitials.containsKey(initials)) {
+                String email = emailNode.getValue();
+                byInitials.put(initials, email == null ? "" : email.trim());
+            }
+        }
+        // an empty first one hides the ones after it, like it does for the node's own members
+        byInitials.values().removeAll(Collections.singleton(""));
+        return byInitials;
+    }
+
+    /**
+     * Index the team by email, so matching an email doesn't scan the whole team for every alias.
+     * Members are indexed by the part of their email before the '@', and by their full email,
+     * using the config's domain for members that don't have one.
+     */
+    private void buildEmailIndex() {
+        Map<String, List<TeamMember>> byLocalPart = new HashMap<String, List<TeamMember>>(teamMembers.size() * 2);
+        Map<String, List<TeamMember>> byEmail = new HashMap<String, List<TeamMember>>(teamMembers.size() * 2);
+        for (TeamMember member : teamMembers) {
+            String localPart = member.getEmailLocalPart();
+            if (localPart == null) {
+                continue;
+            }
+            addToIndex(byLocalPart, localPart, member);
+            addToIndex(byEmail, indexedEmail(member), member);
+        }
+        membersByLocalPart = byLocalPart;
+        membersByEmail = byEmail;
+    }
+
+    /**
+     * Index a layered team starting from the base layer's index, so only the members the project changed are indexed.
+     * The base's lists are copied before they're changed, the base keeps using them.
+     * Needs the ordinals, to keep each list in config order.
+     *
+     * @param base layer this team was merged over.
+     */
+    private void buildEmailIndex(PairConfig base) {
+        if (!StringUtil.equals(domain, base.domain)) {
+            // members without a domain are indexed under another one
+            buildEmailIndex();
+            return;
+        }
+        Map<String, List<TeamMember>> byLocalPart = new HashMap<String, List<TeamMember>>(base.membersByLocalPart);
+        Map<String, List<TeamMember>> byEmail = new HashMap<String, List<TeamMember>>(base.membersByEmail);
+        Set<List<TeamMember>> copies = Collections.newSetFromMap(new IdentityHashMap<List<TeamMember>, Boolean>());
+        for (TeamMember member : base.teamMembers) {
+            if (!ordinals.containsKey(member) && member.getEmailLocalPart() != null) {
+                // replaced, or given another email
+                removeForLayer(byLocalPart, copies, member.getEmailLocalPart(), member);
+                removeForLayer(byEmail, copies, base.indexedEmail(member), member);
             }
         }
+        for (TeamMember member : teamMembers) {
+            if (!base.ordinals.containsKey(member) && member.getEmailLocalPart() != null) {
+                copyForLayer(byLocalPart, copies, member.getEmailLocalPart()).add(member);
+                copyForLayer(byEmail, copies, indexedEmail(member)).add(member);
+            }
+        }
+        Comparator<TeamMember> configOrder = new Comparator<TeamMember>() {
+            @Override
+            public int compare(TeamMember a, TeamMember b) {
+                return ordinals.get(a) - ordinals.get(b);
+            }
+        };
+        for (List<TeamMember> members : copies) {
+            Collections.sort(members, configOrder);
+        }
+        membersByLocalPart = byLocalPart;
+        membersByEmail = byEmail;
+    }
+
+    /**
+     * The list a layer can change for a key, copied from the base's the first time.
+     */
+    private static List<TeamMember> copyForLayer(Map<String, List<TeamMember>> index, Set<List<TeamMember>> copies, String key) {
+        List<TeamMember> members = index.get(key);
+        if (members == null || !copies.contains(members)) {
+            members = members == null ? new ArrayList<TeamMember>(1) : new ArrayList<TeamMember>(members);
+            copies.add(members);
+            index.put(key, members);
+        }
+        return members;
+    }
+
+    private static void removeForLayer(Map<String, List<TeamMember>> index, Set<List<TeamMember>> copies, String key, TeamMember member) {
+        List<TeamMember> members = copyForLayer(index, copies, key);
+        members.remove(member);
+        if (members.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * @return the email a member is indexed under, with the config's domain if the member doesn't have one.
+     */
+    private String indexedEmail(TeamMember member) {
+        String fullEmail = member.getLowerCaseEmail();
+        if (member.getEmail().indexOf('@') < 0 && StringUtil.isNotEmpty(domain)) {
+            fullEmail = fullEmail + "@" + domain.toLowerCase(Locale.ROOT);
+        }
+        return fullEmail;
+    }
+
+    /**
+     * Number every team member by its place in the config, so a pair can be a set of bits.
+     */
+    private void buildOrdinals() {
+        Map<TeamMember, Integer> byMember = new IdentityHashMap<TeamMember, Integer>(teamMembers.size());
+        for (int i = 0; i < teamMembers.size(); i++) {
+            byMember.put(teamMembers.get(i), i);
+        }
+        ordinals = byMember;
+    }
+
+    /**
+     * Turn a pair into a set of team member numbers, the same for every order of the same members.
+     *
+     * @param pair team members.
+     * @return a bit for each member's place in the config,
+     * or null if a member isn't in this config, or is in the pair twice.
+     */
+    @Nullable
+    BitSet keyOf(@NotNull List<TeamMember> pair) {
+        BitSet key = new BitSet(teamMembers.size());
+        for (TeamMember member : pair) {
+            Integer ordinal = ordinals.get(member);
+            if (ordinal == null || key.get(ordinal)) {
+                return null;
+            }
+            key.set(ordinal);
+        }
+        return key;
+    }
+
+    /**
+     * The team members in a key made by {@link #keyOf}.
+     *
+     * @param key a bit for each member's place in the config.
+     * @return team members in config order.
+     */
+    @NotNull
+    List<TeamMember> membersOf(@NotNull BitSet key) {
+        List<TeamMember> members = new ArrayList<TeamMember>(key.cardinality());
+        for (int i = key.nextSetBit(0); i >= 0; i = key.nextSetBit(i + 1)) {
+            members.add(teamMembers.get(i));
+        }
+        return members;
+    }
+
+    private static void addToIndex(Map<String, List<TeamMember>> index, String key, TeamMember member) {
+        List<TeamMember> members = index.get(key);
+        if (members == null) {
+            // almost every key is one member
+            members = new ArrayList<TeamMember>(1);
+            index.put(key, members);
+        }
+        members.add(member);
+    }
+
+    /**
+     * Find the team members whose email starts with an alias, for example "grumpy.cat" for "grumpy.cat@example.com".
+     *
+     * @param alias part of an email before the '@'.
+     * @return matching members in config order, empty if none.
+     */
+    @NotNull
+    List<TeamMember> getTeamMembersByAlias(@NotNull String alias) {
+        List<TeamMember> members = membersByLocalPart.get(alias);
+        return members == null ? Collections.<TeamMember>emptyList() : members;
+    }
+
+    /**
+     * Find the team members with a full email, members without a domain are given the config's domain.
+     *
+     * @param email for example "grumpy.cat@example.com", not case sensitive.
+     * @return matching members in config order, empty if none.
+     */
+    @NotNull
+    List<TeamMember> getTeamMembersByEmail(@NotNull String email) {
+        List<TeamMember> members = membersByEmail.get(email.toLowerCase(Locale.ROOT));
+        return members == null ? Collections.<TeamMember>emptyList() : members;
     }
 
     /**
@@ -200,6 +490,15 @@ public class PairConfig {
      * @return true if git should change the global user.
      */
     public boolean shouldChangeGlobalUser() {
-        return shouldChangeGlobalUser;
+        return Boolean.TRUE.equals(shouldChangeGlobalUser);
+    }
+
+    /**
+     * When more than one team member has the same name before the '@', should the email's domain pick between them.
+     *
+     * @return true if "email: match_domain: true" is set.
+     */
+    public boolean shouldMatchDomain() {
+        return Boolean.TRUE.equals(shouldMatchDomain);
     }
 }
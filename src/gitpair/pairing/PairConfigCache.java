@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import gitpair.git.GitCommandJournal;
+import gitpair.git.LatencyHistogram;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * .pairs files that were already parsed, shared by every project, so the same ~/.pairs isn't parsed again and again.
+ * A file is only read again if its modified time or size changed, and only parsed again if its contents did.
+ * Least recently used files are forgotten first.
+ * A project's .pairs layered over ~/.pairs is only merged again when one of the two files was parsed again.
+ */
+public class PairConfigCache {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    // a file changed this soon after it was read may have changed without its modified time changing
+    private static final long RACY_MILLIS = 2000;
+    private static final PairConfigCache INSTANCE = new PairConfigCache(DEFAULT_CAPACITY);
+
+    private final Map<String, Entry> entries;
+    private final Map<String, Layers> layers;
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+
+    /**
+     * Empty cache.
+     *
+     * @param capacity most files to remember.
+     */
+    PairConfigCache(final int capacity) {
+        entries = new LinkedHashMap<String, Entry>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+        layers = new LinkedHashMap<String, Layers>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Layers> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * The cache shared by all projects.
+     *
+     * @return application wide cache.
+     */
+    @NotNull
+    public static PairConfigCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The config in a .pairs file, parsed only if it changed since last time.
+     *
+     * @param file .pairs file.
+     * @return the config, the same instance as last time if the file didn't change, or null if the file can't be read.
+     */
+    @Nullable
+    public PairConfig get(@NotNull File file) {
+        String path = file.getAbsolutePath();
+        long modified = file.lastModified();
+        long size = file.length();
+        if (modified == 0 || !file.isFile()) {
+            forget(path);
+            return null;
+        }
+
+        Entry cached;
+        synchronized (this) {
+            cached = entries.get(path);
+        }
+        if (cached != null && cached.isUnchanged(modified, size)) {
+            hitCount.incrementAndGet();
+            return cached.config;
+        }
+
+        long started = System.nanoTime();
+        PairsFileLoader.Contents contents;
+        try {
+            contents = PairsFileLoader.load(file);
+        } catch (IOException e) {
+            GitCommandJournal.getInstance().note("Git Pair plugin couldn't open " + path + ": " + e.getMessage());
+            forget(path);
+            return null;
+        }
+
+        PairConfig config;
+        if (cached != null && cached.hash == contents.getHash() && cached.size == contents.getSize()) {
+            // touched, but the same
+            hitCount.incrementAndGet();
+            config = cached.config;
+        } else {
+            missCount.incrementAndGet();
+            config = new PairConfig(contents.getText());
+        }
+        loadLatency.record(System.nanoTime() - started);
+        synchronized (this) {
+            entries.put(path, new Entry(config, modified, contents.getSize(), contents.getHash()));
+        }
+        return config;
+    }
+
+    /**
+     * The config in a project's .pairs layered over the user's, see {@link PairConfig#PairConfig(PairConfig, PairConfig)}.
+     * Each file is cached on its own, so the user's .pairs is parsed once for every project,
+     * and only merged again with a project's when one of them changed.
+     *
+     * @param project the project's .pairs.
+     * @param home    the user's .pairs.
+     * @return the layered config, the same instance as last time if neither file changed,
+     * one of the files if the other can't be read, or null if neither can.
+     */
+    @Nullable
+    public PairConfig getLayered(@NotNull File project, @NotNull File home) {
+        PairConfig override = get(project);
+        PairConfig base = get(home);
+        if (override == null || base == null || override == base) {
+            // one file, or a project in the user's home
+            return override != null ? override : base;
+        }
+
+        String key = project.getAbsolutePath() + File.pathSeparator + home.getAbsolutePath();
+        Layers cached;
+        synchronized (this) {
+            cached = layers.get(key);
+        }
+        if (cached != null && cached.base == base && cached.override == override) {
+            return cached.merged;
+        }
+        PairConfig merged = new PairConfig(base, override);
+        synchronized (this) {
+            layers.put(key, new Layers(base, override, merged));
+        }
+        return merged;
+    }
+
+    /**
+     * @return how many times a config was returned without parsing.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return how many times a file had to be parsed.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return how long reading, and parsing if it changed, took for files that had to be read.
+     */
+    @NotNull
+    public LatencyHistogram getLoadLatency() {
+        return loadLatency;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return for example ".pairs cache: hits=12 misses=2 files=1 loads n=3 p50=0.2ms p99=0.4ms max=0.4ms".
+     */
+    @Override
+    public String toString() {
+        return ".pairs cache: hits=" + getHitCount() + " misses=" + getMissCount() + " files=" + size()
+                + " loads " + loadLatency;
+    }
+
+    private synchronized void forget(String path) {
+        entries.remove(path);
+    }
+
+    /**
+     * Two parsed files, and the config they were merged into.
+     */
+    private static class Layers {
+        final PairConfig base;
+        final PairConfig override;
+        final PairConfig merged;
+
+        Layers(PairConfig base, PairConfig override, PairConfig merged) {
+            this.base = base;
+            this.override = override;
+            this.merged = merged;
+        }
+    }
+
+    /**
+     * A parsed file, and what it looked like when it was read.
+     */
+    private static class Entry {
+        final PairConfig config;
+        final long modified;
+        final long size;
+        final long hash;
+        final long readMillis;
+
+        Entry(PairConfig config, long modified, long size, long hash) {
+            this.config = config;
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+            this.readMillis = System.currentTimeMillis();
+        }
+
+        /**
+         * @return true if the file can't have changed since it was read, without reading it.
+         */
+        boolean isUnchanged(long modified, long size) {
+            return this.modified == modified && this.size == size && readMillis - modified > RACY_MILLIS;
+        }
+    }
+}
@@ -5,74 +5,306 @@
 package gitpair.pairing;
 
 import com.intellij.openapi.util.text.StringUtil;
-import gitpair.git.GitRunner;
+import gitpair.git.GitBackend;
+import gitpair.git.GitConfigEntry;
+import gitpair.git.GitConfigScope;
+import gitpair.git.GitExecutor;
+import gitpair.git.GitMetrics;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Controls pair logic.
+ * Who is paired is an immutable {@link Pair} changed by compare and set, so any thread can ask without waiting.
  */
 public class PairController {
 
+    private static final long GIT_TIMEOUT_MILLIS = 5000;
+    private static final int IDENTITY_CACHE_SIZE = 64;
+    private static final long WRITE_QUIET_MILLIS = 400;
+    private static final String NOT_PAIRED_DISPLAY_NAME = "git pair";
+
     private PairConfig pairConfig;
-    private GitRunner gitRunner;
-    private ArrayList<TeamMember> currentPair;
+    private GitBackend gitBackend;
+    private final AtomicReference<Pair> currentPair = new AtomicReference<Pair>();
+    private volatile GitConfigScope pairScope;
+    private final GitExecutor.Lane gitLane = GitExecutor.getInstance().newLane();
+    private final PairIdentityCache identityCache = new PairIdentityCache(IDENTITY_CACHE_SIZE);
+    private volatile Pair gitPair;
+    private final CoalescingPairWriter pairWriter = new CoalescingPairWriter(new CoalescingPairWriter.Write() {
+        @NotNull
+        @Override
+        public CompletableFuture<Boolean> write() {
+            return runInOrder(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return writeCurrentPair();
+                }
+            });
+        }
+    }, WRITE_QUIET_MILLIS);
 
     /**
      * Logic for pairing.
      *
-     * @param gitRunner  git command runner.
+     * @param gitBackend where git config is read and written, usually a {@link gitpair.git.GitRunner}.
      * @param pairConfig configuration from .pairs.
      */
-    public PairController(@NotNull PairConfig pairConfig, @NotNull GitRunner gitRunner) {
+    public PairController(@NotNull PairConfig pairConfig, @NotNull GitBackend gitBackend) {
         this.pairConfig = pairConfig;
-        this.gitRunner = gitRunner;
-        this.currentPair = new ArrayList<TeamMember>();
+        this.gitBackend = gitBackend;
+        this.currentPair.set(newPair(Collections.<TeamMember>emptyList()));
     }
 
     /**
      * Initialize controller, looks in git for who is paired.
      */
     public void init() {
-        List<TeamMember> pairs = findWhoIsPaired();
-        if (pairs != null) {
-            currentPair = new ArrayList<TeamMember>(pairs);
+        Object outer = GitMetrics.getInstance().beginOperation("PairController.init");
+        try {
+            Pair before = currentPair.get();
+            List<TeamMember> pairs = findWhoIsPaired();
+            if (pairs != null) {
+                Pair found = newPair(pairs);
+                gitPair = found;
+                // if the pair was toggled while git was asked, the toggle is newer than git's answer
+                currentPair.compareAndSet(before, found);
+            }
+        } finally {
+            GitMetrics.getInstance().endOperation(outer);
         }
     }
 
     /**
-     * Add or remove a team member.
+     * Same as {@link #init()}, but git is asked on the {@link GitExecutor} so the caller doesn't wait.
+     *
+     * @return completes when the controller knows who is paired.
+     */
+    @NotNull
+    public CompletableFuture<Void> initAsync() {
+        return runInOrder(new Callable<Void>() {
+            @Override
+            public Void call() {
+                init();
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Ask git who is paired again, on the {@link GitExecutor}, for when git may have changed behind our back.
+     * Skipped while toggles are waiting to be written, since git is behind them.
+     *
+     * @return completes with true if git has a different pair than the controller had.
+     */
+    @NotNull
+    public CompletableFuture<Boolean> refreshAsync() {
+        return runInOrder(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                if (pairWriter.hasPendingChanges()) {
+                    return false;
+                }
+                Pair before = currentPair.get();
+                init();
+                return !before.getIdentity().isSameUser(currentPair.get().getIdentity());
+            }
+        });
+    }
+
+    /**
+     * Add or remove a team member right away, and write the new pair to git on the {@link GitExecutor}.
+     * Writes happen in the order they were asked for.
+     *
+     * @param teamMember team member to turn on or off.
+     * @return completes with true when git has the new pair, false if it couldn't be written.
+     */
+    @NotNull
+    public CompletableFuture<Boolean> toggleTeamMemberAsync(TeamMember teamMember) {
+        final List<TeamMember> pair = toggle(teamMember);
+        if (pair == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return runInOrder(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return writePair(pair, "PairController.toggleTeamMember");
+            }
+        });
+    }
+
+    /**
+     * Add or remove a team member right away, and write to git once the clicking stops.
+     * Several quick toggles are written to git once, with only the pair they end up with.
      *
      * @param teamMember team member to turn on or off.
+     * @return completes with true when git has the pair this toggle is part of, false if it couldn't be written.
      */
-    public void toggleTeamMember(TeamMember teamMember) {
+    @NotNull
+    public CompletableFuture<Boolean> toggleTeamMemberLater(TeamMember teamMember) {
+        if (toggle(teamMember) == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return pairWriter.changed();
+    }
+
+    /**
+     * Write toggles that are waiting for the clicking to stop now, for example because a commit is starting.
+     *
+     * @return completes when git has the pair, right away if nothing is waiting.
+     */
+    @NotNull
+    public CompletableFuture<Boolean> flushPendingWrite() {
+        return pairWriter.flush();
+    }
+
+    /**
+     * @return true if a toggle hasn't been written to git yet.
+     */
+    public boolean hasPendingWrite() {
+        return pairWriter.hasPendingChanges();
+    }
+
+    /**
+     * Change the whole pair at once, and write it to git once on the {@link GitExecutor}, no matter how many members changed.
+     * Team members without an email can't pair, and are left out.
+     * Writes happen in the order they were asked for, along with toggles.
+     *
+     * @param teamMembers everyone who should be paired, nobody for solo without a git user.
+     * @return completes with true when git has the new pair, false if it couldn't be written.
+     */
+    @NotNull
+    public CompletableFuture<Boolean> setPairAsync(@NotNull Collection<TeamMember> teamMembers) {
+        final List<TeamMember> pair = replace(teamMembers);
+        if (pair == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return runInOrder(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return writePair(pair, "PairController.setPair");
+            }
+        });
+    }
+
+    /**
+     * Change who is paired to exactly these members, without telling git.
+     *
+     * @param teamMembers everyone who should be paired.
+     * @return the new pair, or null if it's the same members as before.
+     */
+    @Nullable
+    private List<TeamMember> replace(@NotNull Collection<TeamMember> teamMembers) {
+        List<TeamMember> members = new ArrayList<TeamMember>(teamMembers.size());
+        for (TeamMember teamMember : teamMembers) {
+            if (teamMember != null && StringUtil.isNotEmpty(teamMember.getEmail()) && !members.contains(teamMember)) {
+                members.add(teamMember);
+            }
+        }
+        Pair after = newPair(members);
+        while (true) {
+            Pair before = currentPair.get();
+            if (before.getMembers().size() == members.size() && before.getMembers().containsAll(members)) {
+                return null;
+            }
+            if (currentPair.compareAndSet(before, after)) {
+                return after.getMembers();
+            }
+        }
+    }
+
+    /**
+     * Change who is paired, without telling git.
+     *
+     * @param teamMember team member to turn on or off.
+     * @return the new pair, or null if the team member can't pair.
+     */
+    @Nullable
+    private List<TeamMember> toggle(TeamMember teamMember) {
         if (teamMember == null || StringUtil.isEmpty(teamMember.getEmail())) {
-            return;
+            return null;
         }
 
-        if (currentPair.contains(teamMember)) {
-            currentPair.remove(teamMember);
-        } else {
-            currentPair.add(teamMember);
+        // try again if another thread changed the pair first, so neither change is lost
+        while (true) {
+            Pair before = currentPair.get();
+            Pair after = newPair(before.toggled(teamMember));
+            if (currentPair.compareAndSet(before, after)) {
+                return after.getMembers();
+            }
         }
+    }
+
+    @NotNull
+    private Pair newPair(@NotNull List<TeamMember> members) {
+        return new Pair(members, getPairIdentity(members));
+    }
 
-        String email = generatePairEmail(currentPair);
-        String name = generatePairName(currentPair);
+    /**
+     * Tell git who is paired now, unless git already has that pair.
+     *
+     * @return true if git has the pair.
+     */
+    private boolean writeCurrentPair() {
+        Pair pair = currentPair.get();
+        Pair written = gitPair;
+        if (written != null && written.getIdentity().isSameUser(pair.getIdentity())) {
+            // toggled back to what git has
+            return true;
+        }
+        return writePair(pair.getMembers(), "PairController.flushPairWrite");
+    }
 
-        if (name != null) {
-            gitRunner.setUserName(name, pairConfig.shouldChangeGlobalUser());
+    /**
+     * Tell git who is paired.
+     *
+     * @param pair      team members that are paired.
+     * @param operation name the git processes are counted under in {@link GitMetrics}.
+     * @return true if git has the new pair.
+     */
+    private boolean writePair(List<TeamMember> pair, String operation) {
+        PairIdentity identity = getPairIdentity(pair);
+        String email = identity.getEmail();
+        String name = identity.getName();
+        boolean global = pairConfig.shouldChangeGlobalUser();
+
+        // name and email change together, or not at all
+        boolean written;
+        Object outer = GitMetrics.getInstance().beginOperation(operation);
+        try {
+            written = gitBackend.beginTransaction().setUserNameAndEmail(name, email, global).commit();
+        } finally {
+            GitMetrics.getInstance().endOperation(outer);
         }
-        if (email != null) {
-            gitRunner.setUserEmail(email, pairConfig.shouldChangeGlobalUser());
+        if (!written) {
+            // git may still have the old pair, so its scope is left as it was found
+            gitPair = null;
+            return false;
         }
+        gitPair = newPair(pair);
         if (name == null && email == null) {
-            gitRunner.unsetUserAndEmail(pairConfig.shouldChangeGlobalUser());
+            pairScope = null;
+        } else {
+            pairScope = global ? GitConfigScope.GLOBAL : GitConfigScope.LOCAL;
         }
+        return true;
+    }
+
+    /**
+     * Run git work on the {@link GitExecutor} after the work asked for before it has stopped, even if that failed.
+     */
+    private <T> CompletableFuture<T> runInOrder(Callable<T> task) {
+        return gitLane.submit(task, GIT_TIMEOUT_MILLIS);
     }
 
     /**
@@ -82,11 +314,38 @@ public class PairController {
      */
     @Nullable
     public String getPairDisplayName() {
-        if (currentPair != null && currentPair.size() > 0) {
-            return generatePairName(currentPair);
-        } else {
-            return "git pair";
+        return currentPair.get().getIdentity().getDisplayName();
+    }
+
+    /**
+     * The name, email and display name of a pair, worked out once per pair and then remembered.
+     *
+     * @param pair team members that are paired.
+     * @return identity of the pair.
+     */
+    @NotNull
+    PairIdentity getPairIdentity(@NotNull List<TeamMember> pair) {
+        BitSet key = pairConfig.keyOf(pair);
+        if (key == null) {
+            // someone from outside the config, work it out every time
+            return generatePairIdentity(pair);
+        }
+        PairIdentity identity = identityCache.get(key);
+        if (identity == null) {
+            // config order, so the same members always give the same identity
+            identity = generatePairIdentity(pairConfig.membersOf(key));
+            identityCache.put(key, identity);
+        }
+        return identity;
+    }
+
+    @NotNull
+    private PairIdentity generatePairIdentity(@NotNull List<TeamMember> pair) {
+        if (pair.isEmpty()) {
+            return new PairIdentity(null, null, NOT_PAIRED_DISPLAY_NAME);
         }
+        String name = generatePairName(pair);
+        return new PairIdentity(name, generatePairEmail(pair), name == null ? NOT_PAIRED_DISPLAY_NAME : name);
     }
 
     /**
@@ -96,7 +355,17 @@ public class PairController {
      * @return true if team member is currently paired.
      */
     public boolean isPaired(@Nullable TeamMember teamMember) {
-        return currentPair.contains(teamMember);
+        return currentPair.get().contains(teamMember);
+    }
+
+    /**
+     * Who is paired right now.
+     *
+     * @return unmodifiable list of paired team members.
+     */
+    @NotNull
+    public List<TeamMember> getPairMembers() {
+        return currentPair.get().getMembers();
     }
 
     @NotNull
@@ -104,16 +373,32 @@ public class PairController {
         return pairConfig;
     }
 
+    /**
+     * Which git config the pair's email was found in.
+     *
+     * @return scope of user.email, or null if it isn't set.
+     */
+    @Nullable
+    public GitConfigScope getPairScope() {
+        return pairScope;
+    }
+
     /**
      * Figure out who is paired and return the list.
      *
-     * @return list of currently paired members.
+     * @return list of currently paired members, empty if git has no email, or null if the email can't be read.
      */
     @Nullable
     private List<TeamMember> findWhoIsPaired() {
         // ask git who is paired, instead of relying on an internal state
-        String userEmail = gitRunner.getUserEmail();
-        return matchTeamMembersFromEmail(userEmail);
+        GitConfigEntry emailEntry = gitBackend.getConfigEntry("user.email");
+        if (emailEntry == null || StringUtil.isEmptyOrSpaces(emailEntry.getValue())) {
+            // unset outside the IDE, nobody is paired
+            pairScope = null;
+            return Collections.emptyList();
+        }
+        pairScope = emailEntry.getScope();
+        return matchTeamMembersFromEmail(emailEntry.getValue().trim());
     }
 
 
@@ -126,6 +411,19 @@ public class PairController {
      */
     @Nullable
     List<TeamMember> matchTeamMembersFromEmail(String email) {
+        return matchTeamMembersFromEmail(email, pairConfig.shouldMatchDomain());
+    }
+
+    /**
+     * Given an email address, which team members match that email address.
+     * Each alias between '+' signs is looked up in the PairConfig's email index.
+     *
+     * @param email       address to parse.
+     * @param matchDomain when more than one member has an alias, only keep the ones in the email's domain, if any are.
+     * @return list of matching members, or null if there were errors.
+     */
+    @Nullable
+    List<TeamMember> matchTeamMembersFromEmail(String email, boolean matchDomain) {
         if (StringUtil.isEmpty(email)) {
             return null;
         }
@@ -135,24 +433,17 @@ public class PairController {
             return null;
         }
         String[] aliases = emailSplit[0].split("\\+");
+        String emailDomain = emailSplit.length > 1 ? emailSplit[1] : pairConfig.getDomain();
 
         for (String alias : aliases) {
-            for (TeamMember teamMember : pairConfig.getTeamMembers()) {
-                String personEmail = teamMember.getEmail();
-                if (alias.equals(personEmail)) {
-                    matchingTeam.add(teamMember);
-                    continue;
-                }
-                if (StringUtil.isNotEmpty(personEmail)) {
-                    String[] personEmailSplit = personEmail.split("@");
-                    if (personEmailSplit.length < 1) {
-                        continue;
-                    }
-                    if (alias.equals(personEmailSplit[0])) {
-                        matchingTeam.add(teamMember);
-                    }
+            List<TeamMember> members = pairConfig.getTeamMembersByAlias(alias);
+            if (matchDomain && members.size() > 1 && StringUtil.isNotEmpty(emailDomain)) {
+                List<TeamMember> inDomain = pairConfig.getTeamMembersByEmail(alias + "@" + emailDomain);
+                if (!inDomain.isEmpty()) {
+                    members = inDomain;
                 }
             }
+            matchingTeam.addAll(members);
         }
 
         return matchingTeam;
@@ -173,7 +464,7 @@ public class PairController {
 
         ArrayList<TeamMember> teamArray = new ArrayList<TeamMember>();
         for (TeamMember t : teamMembers) {
-            if (t != null && usernameFromEmail(t.getEmail()) != null) {
+            if (t != null && t.getEmailLocalPart() != null) {
                 teamArray.add(t);
             }
         }
@@ -191,7 +482,7 @@ public class PairController {
             if (i > 0) {
                 sb.append("+");
             }
-            sb.append(usernameFromEmail(teamArray.get(i).getEmail()));
+            sb.append(teamArray.get(i).getEmailLocalPart());
         }
 
         if (StringUtil.isNotEmpty(pairConfig.getDomain())) {
@@ -200,7 +491,7 @@ public class PairController {
         } else {
             for (TeamMember teamMember : teamArray) {
                 // get the first available domain
-                String domain = domainFromEmail(teamMember.getEmail());
+                String domain = teamMember.getEmailDomain();
                 if (StringUtil.isNotEmpty(domain)) {
                     sb.append("@");
                     sb.append(domain);
@@ -266,22 +557,4 @@ public class PairController {
         }
     }
 
-    private static String usernameFromEmail(String email) {
-        if (email == null)
-            return null;
-        String[] split = email.split("@");
-        if (split.length == 0)
-            return null;
-        return split[0];
-    }
-
-    private static String domainFromEmail(String email) {
-        if (email == null)
-            return null;
-        String[] split = email.split("@");
-        if (split.length < 2)
-            return null;
-        return split[1];
-    }
-
 }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import gitpair.git.GitCommandJournal;
+import gitpair.git.GitExecutor;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Notices when .pairs or git config files change outside the IDE, for example from a terminal.
+ * Watches the folders the files are in with a {@link WatchService}, and the IDE can report changes it sees with {@link #changed()}.
+ * A burst of changes, like git writing a lock file and renaming it, is reported once, after things are quiet.
+ */
+public class PairFilesWatcher {
+
+    private static final String TAG = PairFilesWatcher.class.getSimpleName();
+
+    private final Set<Path> files = new HashSet<Path>();
+    private final long quietMillis;
+    private final Runnable onChange;
+
+    private WatchService watchService;
+    private ScheduledFuture<?> pendingChange;
+
+    /**
+     * @param files       files to watch, they don't have to exist yet, but their folders do.
+     * @param quietMillis how long to wait after the last change before reporting it.
+     * @param onChange    called once things are quiet, on a timer thread, so it must be quick.
+     */
+    public PairFilesWatcher(@NotNull Collection<File> files, long quietMillis, @NotNull Runnable onChange) {
+        for (File file : files) {
+            this.files.add(file.getAbsoluteFile().toPath());
+        }
+        this.quietMillis = quietMillis;
+        this.onChange = onChange;
+    }
+
+    /**
+     * Start watching the folders, on a daemon thread.
+     */
+    public synchronized void start() {
+        if (watchService != null) {
+            return;
+        }
+        final Map<WatchKey, Path> folders = new HashMap<WatchKey, Path>();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path folder : foldersOf(files)) {
+                if (folder.toFile().isDirectory()) {
+                    folders.put(folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), folder);
+                }
+            }
+        } catch (IOException e) {
+            GitCommandJournal.getInstance().note(TAG + " can't watch for changes, the pair is only updated from the IDE: " + e.getMessage());
+            return;
+        }
+
+        final WatchService service = watchService;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watch(service, folders);
+            }
+        }, "GitPair-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching.
+     */
+    public synchronized void close() {
+        if (pendingChange != null) {
+            pendingChange.cancel(false);
+            pendingChange = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+            watchService = null;
+        }
+    }
+
+    /**
+     * @param path a file that changed.
+     * @return true if it's one of the files being watched.
+     */
+    public boolean isWatched(@NotNull String path) {
+        return files.contains(new File(path).getAbsoluteFile().toPath());
+    }
+
+    /**
+     * A watched file changed, report it once things are quiet, unless another change comes first.
+     */
+    public synchronized void changed() {
+        if (pendingChange != null) {
+            pendingChange.cancel(false);
+        }
+        pendingChange = GitExecutor.getInstance().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PairFilesWatcher.this) {
+                    pendingChange = null;
+                }
+                onChange.run();
+            }
+        }, quietMillis);
+    }
+
+    private void watch(WatchService service, Map<WatchKey, Path> folders) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path folder = folders.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || (folder != null && files.contains(folder.resolve((Path) event.context())))) {
+                        changed();
+                    }
+                }
+                key.reset();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Set<Path> foldersOf(Set<Path> files) {
+        Set<Path> folders = new HashSet<Path>();
+        for (Path file : files) {
+            if (file.getParent() != null) {
+                folders.add(file.getParent());
+            }
+        }
+        return folders;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * What git and the status bar show for a pair, worked out once.
+ * Immutable, so it can be shared between threads.
+ */
+class PairIdentity {
+
+    private final String name;
+    private final String email;
+    private final String displayName;
+
+    /**
+     * @param name        git user.name, null for nobody.
+     * @param email       git user.email, null for nobody.
+     * @param displayName status bar text.
+     */
+    PairIdentity(@Nullable String name, @Nullable String email, @NotNull String displayName) {
+        this.name = name;
+        this.email = email;
+        this.displayName = displayName;
+    }
+
+    @Nullable
+    String getName() {
+        return name;
+    }
+
+    @Nullable
+    String getEmail() {
+        return email;
+    }
+
+    @NotNull
+    String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * @param other another identity.
+     * @return true if git would have the same user for both.
+     */
+    boolean isSameUser(@NotNull PairIdentity other) {
+        return StringUtil.equals(name, other.name) && StringUtil.equals(email, other.email);
+    }
+}
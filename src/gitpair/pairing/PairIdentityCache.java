@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the identity of the pairs used most recently, keyed by which team members are in the pair,
+ * see {@link PairConfig#keyOf}.  Least recently used pairs are forgotten first.
+ */
+class PairIdentityCache {
+
+    private final Map<BitSet, PairIdentity> identities;
+
+    /**
+     * @param capacity most pairs to remember.
+     */
+    PairIdentityCache(final int capacity) {
+        identities = new LinkedHashMap<BitSet, PairIdentity>(capacity * 4 / 3 + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<BitSet, PairIdentity> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param key which team members, must not be changed after it's used as a key.
+     * @return the identity, or null if it isn't remembered.
+     */
+    @Nullable
+    synchronized PairIdentity get(@NotNull BitSet key) {
+        return identities.get(key);
+    }
+
+    /**
+     * @param key      which team members, must not be changed after.
+     * @param identity identity of the pair.
+     */
+    synchronized void put(@NotNull BitSet key, @NotNull PairIdentity identity) {
+        identities.put(key, identity);
+    }
+
+    synchronized int size() {
+        return identities.size();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads a .pairs file straight into the text the YAML parser scans, without splitting it into lines first.
+ * The file is read through one channel that is always closed, and files bigger than {@link #MAP_THRESHOLD}
+ * are memory mapped instead of copied onto the heap. The bytes are decoded as UTF-8 in one pass.
+ */
+public class PairsFileLoader {
+
+    // a mapping isn't released until it's garbage collected, and on Windows it stops the file being saved,
+    // so only files too big to be worth copying are mapped
+    static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * Read and decode a .pairs file.
+     *
+     * @param file .pairs file.
+     * @return the decoded text, and the size and hash of the bytes it was decoded from.
+     * @throws IOException if the file can't be read.
+     */
+    @NotNull
+    public static Contents load(@NotNull File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer bytes;
+            if (size > MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // keep reading until it's full or the file got shorter
+                }
+                bytes.flip();
+            }
+            return new Contents(toYamlSource(bytes), bytes.limit(), hash(bytes));
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Decode .pairs bytes into text the parser reads like the lines of the file.
+     * The text is always a String, which the parser scans about twice as fast as a CharBuffer,
+     * and mapped bytes are decoded without being copied onto the heap first.
+     * The parser already ignores the '\r' of a "\r\n", so only files that end lines with just '\r' are copied again.
+     *
+     * @param bytes UTF-8 contents of the file, malformed bytes become U+FFFD.
+     * @return yaml source.
+     */
+    @NotNull
+    static String toYamlSource(@NotNull ByteBuffer bytes) {
+        ByteBuffer content = bytes.duplicate();
+        if (startsWithByteOrderMark(content)) {
+            content.position(content.position() + BYTE_ORDER_MARK.length);
+        }
+        String text;
+        if (content.hasArray()) {
+            text = new String(content.array(), content.arrayOffset() + content.position(), content.remaining(), StandardCharsets.UTF_8);
+        } else {
+            try {
+                text = StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                        .decode(content).toString();
+            } catch (IOException e) {
+                // can't happen when replacing errors
+                throw new IllegalStateException(e);
+            }
+        }
+        return hasLoneCarriageReturn(text) ? normalizeLineEndings(text) : text;
+    }
+
+    private static boolean startsWithByteOrderMark(ByteBuffer bytes) {
+        if (bytes.remaining() < BYTE_ORDER_MARK.length) {
+            return false;
+        }
+        for (int i = 0; i < BYTE_ORDER_MARK.length; i++) {
+            if (bytes.get(bytes.position() + i) != BYTE_ORDER_MARK[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasLoneCarriageReturn(String text) {
+        int length = text.length();
+        for (int i = text.indexOf('\r'); i >= 0; i = text.indexOf('\r', i + 1)) {
+            if (i + 1 == length || text.charAt(i + 1) != '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalizeLineEndings(String text) {
+        StringBuilder normalized = new StringBuilder(text.length());
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c != '\r') {
+                normalized.append(c);
+            } else if (i + 1 == length || text.charAt(i + 1) != '\n') {
+                normalized.append('\n');
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static long hash(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * A decoded .pairs file.
+     */
+    public static final class Contents {
+        private final String text;
+        private final long size;
+        private final long hash;
+
+        Contents(@NotNull String text, long size, long hash) {
+            this.text = text;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        /**
+         * @return yaml source, which isn't copied by the parser.
+         */
+        @NotNull
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return number of bytes read.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return CRC32 of the bytes read.
+         */
+        public long getHash() {
+            return hash;
+        }
+    }
+}
@@ -4,14 +4,21 @@
 
 package gitpair.pairing;
 
+import java.util.Locale;
+
 /**
  * An individual team member that can pair.
+ * Team members are shared by every project that reads the same .pairs, and indexed by their email,
+ * so they never change, {@link #withEmail(String)} makes a changed copy.
  */
 public class TeamMember {
 
-    private String initials;
-    private String name;
-    private String email;
+    private final String initials;
+    private final String name;
+    private final String email;
+    private final String emailLocalPart;
+    private final String emailDomain;
+    private final String lowerCaseEmail;
 
     /**
      * Represents a programmer contributor that can check-in to git.
@@ -25,29 +32,61 @@ public class TeamMember {
         this.initials = initials;
         this.name = name;
         this.email = email;
+        if (email == null) {
+            emailLocalPart = null;
+            emailDomain = null;
+            lowerCaseEmail = null;
+        } else {
+            // parsed once here, so making a pair's email doesn't split anything
+            String[] split = email.split("@");
+            emailLocalPart = split.length == 0 ? null : split[0];
+            emailDomain = split.length < 2 ? null : split[1];
+            // git and mail servers don't lower case like the user's language does, "I" is always "i"
+            lowerCaseEmail = email.toLowerCase(Locale.ROOT);
+        }
     }
 
     public String getInitials() {
         return initials;
     }
 
-    public void setInitials(String initials) {
-        this.initials = initials;
-    }
-
     public String getName() {
         return name;
     }
 
-    public void setName(String name) {
-        this.name = name;
-    }
-
     public String getEmail() {
         return email;
     }
 
-    public void setEmail(String email) {
-        this.email = email;
+    /**
+     * The same team member with a different email, for example from "email_addresses".
+     *
+     * @param email email username, or full email address.
+     * @return a new team member, this one doesn't change.
+     */
+    TeamMember withEmail(String email) {
+        return new TeamMember(initials, name, email);
+    }
+
+    /**
+     * The part of the email before the '@'.
+     *
+     * @return for example "robert.wallis" for "robert.wallis@example.com", or null if there's no email.
+     */
+    public String getEmailLocalPart() {
+        return emailLocalPart;
+    }
+
+    /**
+     * The part of the email after the '@'.
+     *
+     * @return for example "example.com" for "robert.wallis@example.com", or null if the email has no domain.
+     */
+    public String getEmailDomain() {
+        return emailDomain;
+    }
+
+    public String getLowerCaseEmail() {
+        return lowerCaseEmail;
     }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.ui;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.project.Project;
+import gitpair.pairing.TeamMember;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Last row in the {@link PairsPopupList}, opens a {@link ChoosePairDialog} to change several team members at once.
+ */
+public class ChoosePairAction extends AnAction {
+
+    private final List<TeamMember> teamMembers;
+    private final TeamMemberAction.TeamMemberActionPerformer teamMemberActionPerformer;
+
+    /**
+     * @param teamMembers     everyone in the .pairs file.
+     * @param actionPerformer applies the selection.
+     */
+    ChoosePairAction(@NotNull List<TeamMember> teamMembers, @NotNull TeamMemberAction.TeamMemberActionPerformer actionPerformer) {
+        super("Choose Pair...");
+        this.teamMembers = teamMembers;
+        this.teamMemberActionPerformer = actionPerformer;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent anActionEvent) {
+        Project project = anActionEvent.getProject();
+        if (project == null) {
+            return;
+        }
+        ChoosePairDialog dialog = new ChoosePairDialog(project, teamMembers, teamMemberActionPerformer);
+        if (dialog.showAndGet()) {
+            teamMemberActionPerformer.onApplySelection(dialog.getSelectedTeamMembers());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.ui;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+import com.intellij.ui.CheckBoxList;
+import com.intellij.ui.components.JBScrollPane;
+import gitpair.pairing.TeamMember;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.JComponent;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Check everyone who is pairing, then apply them all at once, so git is only written once.
+ */
+public class ChoosePairDialog extends DialogWrapper {
+
+    private final List<TeamMember> teamMembers;
+    private final CheckBoxList<TeamMember> checkBoxList = new CheckBoxList<TeamMember>();
+
+    /**
+     * @param project     idea Project.
+     * @param teamMembers everyone in the .pairs file.
+     * @param performer   knows who is paired now.
+     */
+    ChoosePairDialog(@NotNull Project project, @NotNull List<TeamMember> teamMembers,
+                     @NotNull TeamMemberAction.TeamMemberActionPerformer performer) {
+        super(project, false);
+        this.teamMembers = teamMembers;
+        for (TeamMember teamMember : teamMembers) {
+            checkBoxList.addItem(teamMember, teamMember.getName(), performer.isTeamMemberSelected(teamMember));
+        }
+        setTitle("Choose Pair");
+        init();
+    }
+
+    @Nullable
+    @Override
+    protected JComponent createCenterPanel() {
+        return new JBScrollPane(checkBoxList);
+    }
+
+    @Nullable
+    @Override
+    public JComponent getPreferredFocusedComponent() {
+        return checkBoxList;
+    }
+
+    /**
+     * @return team members that are checked, in .pairs order.
+     */
+    @NotNull
+    List<TeamMember> getSelectedTeamMembers() {
+        List<TeamMember> selected = new ArrayList<TeamMember>();
+        for (TeamMember teamMember : teamMembers) {
+            if (checkBoxList.isItemSelected(teamMember)) {
+                selected.add(teamMember);
+            }
+        }
+        return selected;
+    }
+}
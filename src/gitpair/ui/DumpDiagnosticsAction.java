@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.ui;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.ui.Messages;
+import gitpair.git.GitCommandJournal;
+import gitpair.git.GitMetrics;
+import gitpair.pairing.PairConfigCache;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Writes the last git commands the plugin ran, and the git metrics, to a file in the IDE's log folder,
+ * so "pairing is slow" can be answered without verbose IDE logging.
+ * Registered in plugin.xml, find it with Help | Find Action.
+ */
+public class DumpDiagnosticsAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        String diagnostics = GitMetrics.getInstance().getReport()
+                + PairConfigCache.getInstance() + "\n"
+                + "\nlast git commands, oldest first\n"
+                + GitCommandJournal.getInstance().dump();
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(PathManager.getLogPath(), "gitpair-diagnostics-" + timestamp + ".txt");
+        try {
+            Files.write(file.toPath(), diagnostics.getBytes(StandardCharsets.UTF_8));
+            Messages.showInfoMessage(event.getProject(), "Wrote " + file, "Git Pair Diagnostics");
+        } catch (IOException e) {
+            Messages.showErrorDialog(event.getProject(), "Couldn't write " + file + ": " + e.getMessage(), "Git Pair Diagnostics");
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.ui;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.util.ThrowableComputable;
+import com.intellij.openapi.vcs.CheckinProjectPanel;
+import com.intellij.openapi.vcs.changes.CommitContext;
+import com.intellij.openapi.vcs.checkin.CheckinHandler;
+import com.intellij.openapi.vcs.checkin.CheckinHandlerFactory;
+import com.intellij.openapi.wm.StatusBar;
+import com.intellij.openapi.wm.StatusBarWidget;
+import com.intellij.openapi.wm.WindowManager;
+import gitpair.git.GitCommandJournal;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Makes sure git has the pair that was just clicked before a commit starts, so the commit has the right author.
+ * Called by IntelliJ in plugin.xml checkinHandlerFactory.
+ */
+public class FlushPairCheckinHandlerFactory extends CheckinHandlerFactory {
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+    // how often the progress dialog checks if it was cancelled
+    private static final long POLL_MILLIS = 100;
+
+    @NotNull
+    @Override
+    public CheckinHandler createHandler(@NotNull final CheckinProjectPanel panel, @NotNull CommitContext commitContext) {
+        return new CheckinHandler() {
+            @Override
+            public ReturnResult beforeCheckin() {
+                Project project = panel.getProject();
+                if (flushPendingWrite(project)) {
+                    return ReturnResult.COMMIT;
+                }
+                int answer = Messages.showYesNoDialog(project,
+                        "Git Pair couldn't tell git who is paired, so the commit may have the wrong author.\nCommit anyway?",
+                        "Git Pair", Messages.getWarningIcon());
+                return answer == Messages.YES ? ReturnResult.COMMIT : ReturnResult.CANCEL;
+            }
+        };
+    }
+
+    /**
+     * Write the pair if it's waiting for the clicking to stop, and wait for git under a modal progress dialog,
+     * so the IDE keeps painting and the wait can be cancelled.
+     *
+     * @param project project being committed.
+     * @return true if git has the pair, false if the write failed, timed out, or was cancelled.
+     */
+    private static boolean flushPendingWrite(@NotNull Project project) {
+        StatusBar statusBar = WindowManager.getInstance().getStatusBar(project);
+        if (statusBar == null) {
+            return true;
+        }
+        StatusBarWidget widget = statusBar.getWidget(GitPairWidget.class.getName());
+        if (!(widget instanceof GitPairWidget)) {
+            return true;
+        }
+        final CompletableFuture<Boolean> flushed = ((GitPairWidget) widget).flushPendingWrite();
+        try {
+            if (flushed.isDone()) {
+                return Boolean.TRUE.equals(flushed.get());
+            }
+            return ProgressManager.getInstance().runProcessWithProgressSynchronously(new ThrowableComputable<Boolean, Exception>() {
+                @Override
+                public Boolean compute() throws Exception {
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MILLIS);
+                    while (true) {
+                        ProgressManager.checkCanceled();
+                        try {
+                            return Boolean.TRUE.equals(flushed.get(POLL_MILLIS, TimeUnit.MILLISECONDS));
+                        } catch (TimeoutException e) {
+                            if (System.nanoTime() - deadline > 0) {
+                                throw e;
+                            }
+                        }
+                    }
+                }
+            }, "Writing Git Pair", true, project);
+        } catch (ProcessCanceledException e) {
+            return false;
+        } catch (Exception e) {
+            GitCommandJournal.getInstance().note("Git Pair plugin couldn't write the pair before the commit: " + e.getMessage());
+            return false;
+        }
+    }
+}
@@ -6,6 +6,8 @@ package gitpair.ui;
 
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.popup.JBPopupAdapter;
+import com.intellij.openapi.ui.popup.LightweightWindowEvent;
 import com.intellij.openapi.ui.popup.ListPopup;
 import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.text.StringUtil;
@@ -15,29 +17,50 @@ import com.intellij.openapi.wm.WindowManager;
 import com.intellij.openapi.wm.impl.status.EditorBasedWidget;
 import com.intellij.util.Consumer;
 import com.intellij.util.ObjectUtils;
+import gitpair.GitPairState;
+import gitpair.git.GitCommandJournal;
+import gitpair.git.GitConfigScope;
+import gitpair.git.GitMetrics;
 import gitpair.git.GitRunner;
 import gitpair.pairing.PairConfig;
+import gitpair.pairing.PairConfigCache;
 import gitpair.pairing.PairController;
 import gitpair.pairing.TeamMember;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.awt.Point;
 import java.awt.event.MouseEvent;
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 /**
  * Visible menu to be shown in the bottom left to indicate which pair is active, and allow a choice of new pair.
  */
-public class GitPairWidget extends EditorBasedWidget implements StatusBarWidget.MultipleTextValuesPresentation, StatusBarWidget.Multiframe, TeamMemberAction.TeamMemberActionPerformer {
+public class GitPairWidget extends EditorBasedWidget implements StatusBarWidget.MultipleTextValuesPresentation, StatusBarWidget.Multiframe, TeamMemberAction.TeamMemberActionPerformer,
+        PairFilesListener {
 
     @Nullable
     private String selectedPair;
 
+    @Nullable
+    private GitConfigScope selectedPairScope;
+
     private PairController pairController;
 
+    // .pairs the controller was made from, the cache returns the same instance until the file changes
+    private PairConfig pairConfig;
+
+    @Nullable
+    private ListPopup openPopup;
+
+    // a background load is running, only touched on the UI thread
+    private boolean loading;
+
     /**
      * Widget to be shown in the bottom left to indicate which pair is active, and allow a choice of new pair.
      *
@@ -45,56 +68,132 @@ public class GitPairWidget extends EditorBasedWidget implements StatusBarWidget.
      */
     public GitPairWidget(@NotNull Project project) {
         super(project);
+        project.getMessageBus().connect(this).subscribe(PairFilesListener.TOPIC, this);
+    }
+
+    /**
+     * Read .pairs and ask git who is the current user on a pooled thread, then update the widget on the UI thread.
+     * If .pairs is gone, the widget goes back to showing nobody paired.
+     * Toggles the current controller hasn't written yet are written first, so the new controller reads them from git.
+     *
+     * @param install true to put the widget in the status bar if a .pairs is found.
+     */
+    public void updateStateInBackground(final boolean install) {
+        final PairController previous = pairController;
+        loading = true;
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            @Override
+            public void run() {
+                if (previous != null) {
+                    waitForWrite(previous);
+                }
+                final PairConfig config = loadPairConfig();
+                final PairController controller = config == null ? null : createPairController(config);
+                ApplicationManager.getApplication().invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        loading = false;
+                        Project project = getProject();
+                        if (isDisposed() || project == null) {
+                            return;
+                        }
+                        if (pairController != previous || (previous != null && previous.hasPendingWrite())) {
+                            // toggled while git was read, so git was read too early, read it again after the write
+                            updateStateInBackground(install);
+                            return;
+                        }
+                        if (controller == null) {
+                            // .pairs is gone, don't show the last pair now or next time
+                            GitPairState.getInstance(project).clear();
+                            showNoPair();
+                            return;
+                        }
+                        pairController = controller;
+                        pairConfig = config;
+                        if (install) {
+                            installWidgetToStatusBar(project);
+                        } else {
+                            updateWidgetView();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Wait on a pooled thread for a controller's toggles to reach git, whether or not git takes them.
+     */
+    private static void waitForWrite(@NotNull PairController controller) {
+        try {
+            controller.flushPendingWrite().get();
+        } catch (Exception e) {
+            GitCommandJournal.getInstance().note("Git Pair plugin couldn't write the pair: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop showing a pair, for when there is no .pairs.
+     * The widget stays in the status bar, empty, so it can show the pair again if a .pairs is made.
+     */
+    private void showNoPair() {
+        pairController = null;
+        pairConfig = null;
+        selectedPair = null;
+        selectedPairScope = null;
+        if (myStatusBar != null) {
+            myStatusBar.updateWidget(ID());
+        }
     }
 
     /**
-     * Ask git who is the current user, and update our internal state.
+     * Show the pair saved when the project was last open, until git is asked.
+     *
+     * @param snapshot saved pair.
      */
-    public boolean updateState() {
+    public void showSnapshot(@NotNull GitPairState.Snapshot snapshot) {
+        selectedPair = snapshot.displayName;
+        selectedPairScope = snapshot.scope == null ? null : GitConfigScope.fromGitName(snapshot.scope);
+    }
+
+    /**
+     * Read .pairs from the project layered over the one in the user's home, either can be missing.
+     * Files that didn't change since any project read them aren't parsed again, see {@link PairConfigCache}.
+     *
+     * @return the config, or null if there is no .pairs.
+     */
+    @Nullable
+    private PairConfig loadPairConfig() {
         Project project = getProject();
         if (project == null) {
-            return false;
+            return null;
         }
         String projectPath = project.getBasePath();
         if (projectPath == null) {
-            return false;
+            return null;
         }
         String projectPairs = projectPath.concat("/.pairs");
         String userHome = System.getProperty("user.home");
         String homePairs = userHome.concat("/.pairs");
 
-        String configYaml = getPairsFile(projectPairs, homePairs);
-        if (configYaml == null)
-            return false;
-        PairConfig pairConfig = new PairConfig(configYaml);
-        GitRunner gitRunner = new GitRunner(projectPath);
-        pairController = new PairController(pairConfig, gitRunner);
-        pairController.init();
-        updateWidgetView();
-
-        return true;
+        return PairConfigCache.getInstance().getLayered(new File(projectPairs), new File(homePairs));
     }
 
-    private String getPairsFile(String... paths) {
-        for (String configFile : paths) {
-            StringBuilder configYaml = new StringBuilder();
-            try {
-                BufferedReader br = new BufferedReader(new FileReader(configFile));
-                String line;
-                while ((line = br.readLine()) != null) {
-                    configYaml.append(line).append("\n");
-                }
-                return configYaml.toString();
-            } catch (FileNotFoundException ignored) {
-            } catch (IOException e) {
-                System.out.println("Git Pair plugin couldn't open " + configFile + ": " + e.getMessage());
-            }
-
-        }
-        return null;
+    /**
+     * Ask git who is paired.
+     *
+     * @param config from {@link #loadPairConfig()}, so the project has a path.
+     * @return controller that knows who is paired.
+     */
+    @NotNull
+    private PairController createPairController(@NotNull PairConfig config) {
+        String projectPath = ObjectUtils.assertNotNull(getProject()).getBasePath();
+        GitRunner gitRunner = new GitRunner(ObjectUtils.assertNotNull(projectPath));
+        PairController controller = new PairController(config, gitRunner);
+        controller.init();
+        return controller;
     }
 
-
     @Override
     public StatusBarWidget copy() {
         return new GitPairWidget(ObjectUtils.assertNotNull(getProject()));
@@ -103,8 +202,155 @@ public class GitPairWidget extends EditorBasedWidget implements StatusBarWidget.
     @Override
     @Nullable
     public ListPopup getPopupStep() {
-        updateState(); // make sure we have the latest info that should have changed in the background
-        return PairsPopupList.createPairsPopup(myProject, pairController, this);
+        if (pairController == null) {
+            // still showing the saved pair, .pairs and git are read in the background and never on the UI thread
+            if (!loading) {
+                updateStateInBackground(false);
+            }
+            return null;
+        }
+        // open right away with what we know, changes to .pairs and git are pushed by the PairFilesWatcher
+        return createPopup(pairController);
+    }
+
+    @NotNull
+    private ListPopup createPopup(@NotNull final PairController controller) {
+        final ListPopup popup = PairsPopupList.createPairsPopup(myProject, controller, this);
+        popup.addListener(new JBPopupAdapter() {
+            @Override
+            public void onClosed(LightweightWindowEvent event) {
+                if (openPopup == popup) {
+                    openPopup = null;
+                }
+                // done clicking, don't wait for the quiet period
+                controller.flushPendingWrite();
+            }
+        });
+        openPopup = popup;
+        return popup;
+    }
+
+    @Override
+    public void pairFilesChanged() {
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (isDisposed()) {
+                    return;
+                }
+                if (pairController == null) {
+                    // maybe .pairs was just made, show the widget if it was
+                    updateStateInBackground(true);
+                } else {
+                    reloadInBackground();
+                }
+            }
+        });
+    }
+
+    /**
+     * Check if .pairs or git changed since the controller was made, and show the changes if they did.
+     */
+    private void reloadInBackground() {
+        final PairController cached = pairController;
+        final PairConfig cachedConfig = pairConfig;
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            @Override
+            public void run() {
+                final PairConfig config = loadPairConfig();
+                if (config == null) {
+                    showNoPairLater(cached);
+                    return;
+                }
+                if (config == cachedConfig) {
+                    // same teammates, only git may have changed
+                    cached.refreshAsync().whenComplete(new BiConsumer<Boolean, Throwable>() {
+                        @Override
+                        public void accept(Boolean changed, Throwable error) {
+                            if (error == null && changed) {
+                                showReloadedLater(cached);
+                            }
+                        }
+                    });
+                    return;
+                }
+                final PairController fresh = createPairController(config);
+                ApplicationManager.getApplication().invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        // toggles waiting to be written belong to the cached controller, pick up .pairs after them
+                        if (isDisposed() || pairController != cached || cached.hasPendingWrite()) {
+                            return;
+                        }
+                        pairController = fresh;
+                        pairConfig = config;
+                        showReloaded(fresh);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stop showing a pair on the UI thread, like {@link #updateStateInBackground} does when .pairs is gone.
+     *
+     * @param cached controller the widget had when .pairs was found gone.
+     */
+    private void showNoPairLater(@NotNull final PairController cached) {
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                Project project = getProject();
+                // toggles waiting to be written belong to the cached controller, let them finish first
+                if (isDisposed() || project == null || pairController != cached || cached.hasPendingWrite()) {
+                    return;
+                }
+                GitPairState.getInstance(project).clear();
+                showNoPair();
+            }
+        });
+    }
+
+    private void showReloadedLater(@NotNull final PairController controller) {
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!isDisposed() && pairController == controller) {
+                    showReloaded(controller);
+                }
+            }
+        });
+    }
+
+    /**
+     * Show a changed pair in the status bar, and in the popup if it's open.
+     * The popup's rows are made when it opens, so it's opened again in the same place with new rows.
+     *
+     * @param controller controller with the changes.
+     */
+    private void showReloaded(@NotNull PairController controller) {
+        updateWidgetView();
+        ListPopup popup = openPopup;
+        if (popup == null || !popup.isVisible() || myStatusBar == null) {
+            return;
+        }
+        Point location = popup.getLocationOnScreen();
+        popup.cancel();
+        createPopup(controller).showInScreenCoordinates(myStatusBar.getComponent(), location);
+    }
+
+    /**
+     * Write toggles that haven't been written to git yet.
+     *
+     * @return completes when git has the pair.
+     */
+    @NotNull
+    public CompletableFuture<Boolean> flushPendingWrite() {
+        PairController controller = pairController;
+        if (controller == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return controller.flushPendingWrite();
     }
 
     @Override
@@ -136,6 +382,10 @@ public class GitPairWidget extends EditorBasedWidget implements StatusBarWidget.
     @Override
     @Nullable
     public String getTooltipText() {
+        if (selectedPair != null && selectedPairScope != null) {
+            // local or global, so it's clear if other projects commit as this pair too
+            return selectedPair + " (" + selectedPairScope.getGitName() + ")";
+        }
         return selectedPair;
     }
 
@@ -148,25 +398,75 @@ public class GitPairWidget extends EditorBasedWidget implements StatusBarWidget.
 
     @Override
     public boolean isTeamMemberSelected(TeamMember teamMember) {
-        return pairController.isPaired(teamMember);
+        return pairController != null && pairController.isPaired(teamMember);
     }
 
     @Override
     public void onSelectTeamMember(TeamMember teamMember) {
-        if (!pairController.isPaired(teamMember)) {
-            pairController.toggleTeamMember(teamMember);
+        PairController controller = pairController;
+        if (controller == null) {
+            // not loaded yet, or .pairs is gone
+            return;
+        }
+        if (!controller.isPaired(teamMember)) {
+            toggleTeamMember(controller, teamMember);
         }
         updateWidgetView();
     }
 
     @Override
     public void onDeselectTeamMember(TeamMember teamMember) {
-        if (pairController.isPaired(teamMember)) {
-            pairController.toggleTeamMember(teamMember);
+        PairController controller = pairController;
+        if (controller == null) {
+            return;
+        }
+        if (controller.isPaired(teamMember)) {
+            toggleTeamMember(controller, teamMember);
         }
         updateWidgetView();
     }
 
+    @Override
+    public void onApplySelection(Collection<TeamMember> teamMembers) {
+        PairController controller = pairController;
+        if (controller == null) {
+            return;
+        }
+        controller.setPairAsync(teamMembers).whenComplete(resyncIfNotWritten(controller));
+        updateWidgetView();
+    }
+
+    /**
+     * Toggle right away, and let git catch up in the background once the clicking stops.
+     *
+     * @param controller the widget's controller.
+     * @param teamMember team member to turn on or off.
+     */
+    private void toggleTeamMember(@NotNull PairController controller, TeamMember teamMember) {
+        controller.toggleTeamMemberLater(teamMember).whenComplete(resyncIfNotWritten(controller));
+    }
+
+    /**
+     * @param controller that wrote the change.
+     * @return when git didn't take the change, shows who git thinks is paired.
+     */
+    @NotNull
+    private BiConsumer<Boolean, Throwable> resyncIfNotWritten(@NotNull final PairController controller) {
+        return new BiConsumer<Boolean, Throwable>() {
+            @Override
+            public void accept(Boolean written, Throwable error) {
+                if (error != null || !Boolean.TRUE.equals(written)) {
+                    controller.initAsync().whenComplete(new BiConsumer<Void, Throwable>() {
+                        @Override
+                        public void accept(Void ignored, Throwable initError) {
+                            updateWidgetViewLater();
+                        }
+                    });
+                }
+            }
+        };
+    }
+
     /**
      * Insert this widget into the status bar in the correct position.
      *
@@ -177,19 +477,56 @@ public class GitPairWidget extends EditorBasedWidget implements StatusBarWidget.
             @Override
             public void run() {
                 StatusBar statusBar = WindowManager.getInstance().getStatusBar(project);
-                if (statusBar != null && !isDisposed()) {
+                if (statusBar != null && !isDisposed() && statusBar.getWidget(ID()) == null) {
                     statusBar.addWidget(GitPairWidget.this, "after " + (SystemInfo.isMac ? "Encoding" : "InsertOverwrite"), project);
+                }
+                if (!isDisposed()) {
                     updateWidgetView();
                 }
             }
         });
     }
 
+    /**
+     * Refresh the view on the status bar from any thread.
+     */
+    private void updateWidgetViewLater() {
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!isDisposed()) {
+                    updateWidgetView();
+                }
+            }
+        });
+    }
+
+    /**
+     * Remember who is shown, for the next time the project opens.
+     */
+    private void saveSnapshot() {
+        Project project = getProject();
+        if (project == null) {
+            return;
+        }
+        List<String> memberEmails = new ArrayList<String>();
+        for (TeamMember teamMember : pairController.getPairMembers()) {
+            memberEmails.add(teamMember.getEmail());
+        }
+        GitPairState.getInstance(project).update(selectedPair,
+                selectedPairScope == null ? null : selectedPairScope.getGitName(), memberEmails);
+    }
+
     /**
      * Refresh the view on the status bar.
      */
     private void updateWidgetView() {
-        selectedPair = pairController.getPairDisplayName();
+        GitMetrics.getInstance().recordWidgetRefresh();
+        if (pairController != null) {
+            selectedPair = pairController.getPairDisplayName();
+            selectedPairScope = pairController.getPairScope();
+            saveSnapshot();
+        }
         if (myStatusBar != null) {
             myStatusBar.updateWidget(ID());
         }
@@ -0,0 +1,20 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.ui;
+
+import com.intellij.util.messages.Topic;
+
+/**
+ * Told when .pairs or a git config file changed, on the project's message bus, so every status bar shows the new pair.
+ */
+public interface PairFilesListener {
+
+    Topic<PairFilesListener> TOPIC = Topic.create("git pair files changed", PairFilesListener.class);
+
+    /**
+     * Something changed, maybe the teammates or who is paired.  Called on any thread.
+     */
+    void pairFilesChanged();
+}
@@ -56,6 +56,8 @@ public class PairsPopupList extends PopupFactoryImpl.ActionGroupPopup {
         for (TeamMember teamMember : pairConfig.getTeamMembers()) {
             defaultActionGroup.add(new TeamMemberAction(teamMember, teamMemberActionPerformer));
         }
+        defaultActionGroup.addSeparator();
+        defaultActionGroup.add(new ChoosePairAction(pairConfig.getTeamMembers(), teamMemberActionPerformer));
 
         return defaultActionGroup;
     }
@@ -0,0 +1,25 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.ui;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.ui.Messages;
+import gitpair.git.GitMetrics;
+import gitpair.pairing.PairConfigCache;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Shows how much time git has cost, the same numbers JMX shows as "gitpair:type=GitMetrics".
+ * Registered in plugin.xml, find it with Help | Find Action.
+ */
+public class ShowGitMetricsAction extends AnAction {
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent event) {
+        String report = GitMetrics.getInstance().getReport() + PairConfigCache.getInstance();
+        Messages.showInfoMessage(event.getProject(), report, "Git Pair Metrics");
+    }
+}
@@ -9,6 +9,8 @@ import com.intellij.openapi.actionSystem.ToggleAction;
 import com.sun.istack.NotNull;
 import gitpair.pairing.TeamMember;
 
+import java.util.Collection;
+
 /**
  * Represents a row in the {@link PairsPopupList}, an individual that could be pairing right now.
  */
@@ -64,5 +66,12 @@ public class TeamMemberAction extends ToggleAction {
          * @param teamMember that was clicked.
          */
         void onDeselectTeamMember(TeamMember teamMember);
+
+        /**
+         * Make exactly these team members the pair.
+         *
+         * @param teamMembers that were checked.
+         */
+        void onApplySelection(Collection<TeamMember> teamMembers);
     }
 }
@@ -7,16 +7,41 @@ package gitpair.yaml;
 import com.intellij.openapi.util.text.StringUtil;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a YAML node.
+ * Nodes with many children look them up by key in a hash index, built the first time it's needed.
+ * Nodes made by {@link Yaml} point into the parsed source, and only copy their key and value out of it when asked.
  */
 public class Node {
 
+    // fewer children than this are faster to scan than to index
+    private static final int INDEX_THRESHOLD = 8;
+
+    // keys most .pairs files have, shared instead of copied out of every file
+    private static final String[] COMMON_KEYS = {
+            "pairs", "email", "prefix", "domain", "match_domain", "email_addresses", "global",
+    };
+
     private String key;
     private String value;
-    private List<Node> children = new ArrayList<Node>();
+    private List<Node> children;
+    private List<Node> readOnlyChildren = Collections.emptyList();
+    private Node parent;
+    private Map<String, Node> index;
+
+    // while keyStart or valueStart is set, the key or a single line value is still in the source
+    private CharSequence source;
+    private int keyStart = -1;
+    private int keyEnd;
+    private int valueStart = -1;
+    private int valueEnd;
+    // a value of more than one line, until it's asked for
+    private StringBuilder valueBuilder;
 
     /**
      * Create a new Yaml Node.
@@ -27,48 +52,114 @@ public class Node {
         this.key = key;
     }
 
+    /**
+     * Create a node whose key is still in the source.
+     *
+     * @param source   the whole YAML source, which must not change.
+     * @param keyStart where the key starts.
+     * @param keyEnd   where the key ends.
+     */
+    Node(CharSequence source, int keyStart, int keyEnd) {
+        this.source = source;
+        this.keyStart = keyStart;
+        this.keyEnd = keyEnd;
+    }
+
     public String getKey() {
+        if (keyStart >= 0) {
+            key = common(source, keyStart, keyEnd);
+            keyStart = -1;
+        }
         return key;
     }
 
     public void setKey(String key) {
         this.key = key;
+        keyStart = -1;
+        if (parent != null) {
+            // looked up by the old key in the parent's index
+            parent.index = null;
+        }
     }
 
     public String getValue() {
+        if (valueStart >= 0) {
+            value = source.subSequence(valueStart, valueEnd).toString();
+            valueStart = -1;
+        } else if (valueBuilder != null) {
+            value = valueBuilder.toString();
+            valueBuilder = null;
+        }
         return value;
     }
 
     public void setValue(String value) {
         this.value = value;
+        valueStart = -1;
+        valueBuilder = null;
     }
 
+    /**
+     * @return children in the order they were added, use {@link #addChild(Node)} to add more.
+     */
     public List<Node> getChildren() {
-        return children;
+        return readOnlyChildren;
     }
 
     /**
      * Get a child by name.
      *
      * @param key name of the child.
-     * @return child or null if not present.
+     * @return first child with that name, or null if not present.
      */
     public Node get(String key) {
+        if (children == null) {
+            return null;
+        }
+        if (children.size() > INDEX_THRESHOLD) {
+            return getIndex().get(key);
+        }
         for (Node child : children) {
-            if (StringUtil.equals(child.getKey(), key)) {
+            if (child.keyEquals(key)) {
                 return child;
             }
         }
         return null;
     }
 
+    /**
+     * First child for each key, built when a child is looked up, and thrown away when a child is added or renamed.
+     */
+    private Map<String, Node> getIndex() {
+        if (index == null) {
+            Map<String, Node> byKey = new HashMap<String, Node>(children.size() * 4 / 3 + 1);
+            for (Node child : children) {
+                if (!byKey.containsKey(child.getKey())) {
+                    byKey.put(child.getKey(), child);
+                }
+            }
+            index = byKey;
+        }
+        return index;
+    }
+
+    /**
+     * Compare the key without copying it out of the source.
+     */
+    private boolean keyEquals(String other) {
+        if (keyStart < 0) {
+            return StringUtil.equals(key, other);
+        }
+        return other != null && regionEquals(source, keyStart, keyEnd, other);
+    }
+
     /**
      * Number of children.
      *
      * @return number of children.
      */
     public int size() {
-        return children.size();
+        return children == null ? 0 : children.size();
     }
 
     /**
@@ -77,7 +168,13 @@ public class Node {
      * @param child new child of this node.
      */
     public void addChild(Node child) {
+        if (children == null) {
+            children = new ArrayList<Node>();
+            readOnlyChildren = Collections.unmodifiableList(children);
+        }
         children.add(child);
+        child.parent = this;
+        index = null;
     }
 
     /**
@@ -87,16 +184,48 @@ public class Node {
      * @param value new value to add.
      */
     public void appendValue(String value) {
-        if (this.value == null) {
-            this.value = "";
+        String trimmed = value.trim();
+        if (valueStart < 0 && valueBuilder == null && StringUtil.isEmpty(this.value)) {
+            this.value = trimmed;
+        } else {
+            lines().append('\n').append(trimmed);
         }
-        if (StringUtil.isEmpty(this.value)) {
-            this.value = value.trim();
+    }
+
+    /**
+     * Same as {@link #appendValue(String)} for an already trimmed line of the source, without copying it yet.
+     *
+     * @param source the YAML source this node was made from.
+     * @param start  where the trimmed value starts.
+     * @param end    where the trimmed value ends.
+     */
+    void appendValue(CharSequence source, int start, int end) {
+        if (valueStart < 0 && valueBuilder == null && StringUtil.isEmpty(this.value)) {
+            this.source = source;
+            valueStart = start;
+            valueEnd = end;
         } else {
-            this.value += "\n" + value.trim();
+            lines().append('\n').append(source, start, end);
         }
     }
 
+    /**
+     * The value as a builder, to add more lines to it.
+     */
+    private StringBuilder lines() {
+        if (valueBuilder == null) {
+            valueBuilder = new StringBuilder();
+            if (valueStart >= 0) {
+                valueBuilder.append(source, valueStart, valueEnd);
+                valueStart = -1;
+            } else {
+                valueBuilder.append(value);
+                value = null;
+            }
+        }
+        return valueBuilder;
+    }
+
     /**
      * Determines if a child of the key exists.
      *
@@ -104,21 +233,40 @@ public class Node {
      * @return child node.
      */
     public boolean containsKey(String key) {
-        for (Node child : children) {
-            if (StringUtil.equals(child.getKey(), key)) {
-                return true;
-            }
-        }
-        return false;
+        return get(key) != null;
     }
 
     @Override
     public String toString() {
-        String k = key == null ? "" : key;
-        String v = value == null ? "" : value;
+        String k = getKey() == null ? "" : getKey();
+        String v = getValue() == null ? "" : getValue();
         return "Node{" + k + ':' +
                 v + ", " +
-                children +
+                getChildren() +
                 '}';
     }
+
+    /**
+     * Copy a key out of the source, sharing the string if it's a common key.
+     */
+    private static String common(CharSequence source, int start, int end) {
+        for (String common : COMMON_KEYS) {
+            if (regionEquals(source, start, end, common)) {
+                return common;
+            }
+        }
+        return source.subSequence(start, end).toString();
+    }
+
+    private static boolean regionEquals(CharSequence source, int start, int end, String other) {
+        if (end - start != other.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) != other.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
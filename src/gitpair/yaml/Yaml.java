@@ -4,15 +4,15 @@
 
 package gitpair.yaml;
 
-import com.intellij.openapi.util.text.StringUtil;
-
-import java.util.Stack;
-
 /**
  * Get a simple string map for a YAML file.  Does not handle all cases, this is just simple.
+ * The source is scanned once, line by line with a cursor, and keys and values are left in it
+ * until a {@link Node} is asked for them.
  */
 public class Yaml {
 
+    private static final int INITIAL_DEPTH = 8;
+
     /**
      * Parse a YAML file and return an object representation.
      *
@@ -20,70 +20,106 @@ public class Yaml {
      * @return map of the contents.
      */
     public static Node parse(String fileContents) {
+        return parse((CharSequence) fileContents);
+    }
+
+    /**
+     * Parse a YAML file and return an object representation.
+     *
+     * @param source contents of the YAML file, which must not change while the nodes are used.
+     * @return map of the contents.
+     */
+    public static Node parse(CharSequence source) {
 
         Node rootNode = new Node(null);
-        Stack<Node> parentStack = new Stack<Node>();
-        Stack<Node> nodeStack = new Stack<Node>();
-        Stack<Integer> depthStack = new Stack<Integer>();
-        parentStack.push(rootNode);
-        nodeStack.push(rootNode);
-        depthStack.push(-1);
-
-        String[] lines = fileContents.split("\n");
-        for (String line : lines) {
-            String trimmed = line.trim();
-            if (trimmed.startsWith("#")) {
-                // comment
-                continue;
+
+        // the open nodes, their parents and how deep they are, deepest last
+        Node[] nodes = new Node[INITIAL_DEPTH];
+        Node[] parents = new Node[INITIAL_DEPTH];
+        int[] depths = new int[INITIAL_DEPTH];
+        nodes[0] = rootNode;
+        parents[0] = rootNode;
+        depths[0] = -1;
+        int top = 0;
+
+        int length = source.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && source.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+
+            // same as String.trim()
+            int start = lineStart;
+            while (start < lineEnd && source.charAt(start) <= ' ') {
+                start++;
+            }
+            int end = lineEnd;
+            while (end > start && source.charAt(end - 1) <= ' ') {
+                end--;
             }
-            if (StringUtil.isEmpty(trimmed)) {
+            if (start == end || source.charAt(start) == '#') {
+                // empty or comment
+                lineStart = next;
                 continue;
             }
 
-            int currentDepth = depth(line);
+            int currentDepth = depth(source, lineStart, lineEnd);
 
             // shallower
-            if (currentDepth < depthStack.peek()) {
-                while (currentDepth <= depthStack.peek()) {
-                    nodeStack.pop();
-                    parentStack.pop();
-                    depthStack.pop();
+            if (currentDepth < depths[top]) {
+                while (currentDepth <= depths[top]) {
+                    nodes[top] = null;
+                    parents[top] = null;
+                    top--;
                 }
             }
 
-            if (trimmed.contains(":")) {
+            int colon = indexOf(source, ':', start, end);
+            if (colon >= 0) {
                 // is a new node
-                String key = trimmed.substring(0, trimmed.indexOf(":"));
-                Node currentNode = new Node(key);
+                Node currentNode = new Node(source, start, colon);
 
                 // deeper, only care about deeper nodes, not values
-                if (currentDepth > depthStack.peek()) {
-                    parentStack.push(nodeStack.peek());
-                    nodeStack.push(currentNode);
-                    depthStack.push(currentDepth);
-                } else if (currentDepth == depthStack.peek()) {
+                if (currentDepth > depths[top]) {
+                    if (top + 1 == depths.length) {
+                        nodes = grow(nodes);
+                        parents = grow(parents);
+                        depths = grow(depths);
+                    }
+                    parents[top + 1] = nodes[top];
+                    nodes[top + 1] = currentNode;
+                    depths[top + 1] = currentDepth;
+                    top++;
+                } else if (currentDepth == depths[top]) {
                     // replace with new current
-                    nodeStack.pop();
-                    nodeStack.push(currentNode);
+                    nodes[top] = currentNode;
                 }
 
-                parentStack.peek().addChild(currentNode);
+                parents[top].addChild(currentNode);
 
-                String value = trimmed.substring(trimmed.indexOf(":") + 1);
-                if (StringUtil.isNotEmpty(value)) {
-                    currentNode.appendValue(value);
+                if (colon + 1 < end) {
+                    // the line's end is trimmed, so there is something after the spaces
+                    int valueStart = colon + 1;
+                    while (source.charAt(valueStart) <= ' ') {
+                        valueStart++;
+                    }
+                    currentNode.appendValue(source, valueStart, end);
                 }
             } else {
                 // is a value
-                if (currentDepth > depthStack.peek()) {
+                if (currentDepth > depths[top]) {
                     // add to current node if the value node is deeper
-                    nodeStack.peek().appendValue(trimmed);
-                } else if (currentDepth == depthStack.peek()) {
+                    nodes[top].appendValue(source, start, end);
+                } else if (currentDepth == depths[top]) {
                     // add to parent node if the value is equal to the sibling node
-                    parentStack.peek().appendValue(trimmed);
+                    parents[top].appendValue(source, start, end);
                 }
                 // if the depth was lower, the code before the ":" check should have updated the stack
             }
+            lineStart = next;
         }
 
         return rootNode;
@@ -96,12 +132,37 @@ public class Yaml {
      * @return number of spaces before content.
      */
     static int depth(String line) {
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
+        return depth(line, 0, line.length());
+    }
+
+    private static int depth(CharSequence source, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
             if (c != ' ' && c != '\t' && c != '\r' && c != '\n') {
-                return i;
+                return i - start;
             }
         }
         return 0;
     }
+
+    private static int indexOf(CharSequence source, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (source.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Node[] grow(Node[] stack) {
+        Node[] grown = new Node[stack.length * 2];
+        System.arraycopy(stack, 0, grown, 0, stack.length);
+        return grown;
+    }
+
+    private static int[] grow(int[] stack) {
+        int[] grown = new int[stack.length * 2];
+        System.arraycopy(stack, 0, grown, 0, stack.length);
+        return grown;
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import junit.framework.TestCase;
+
+/**
+ * Make sure the journal keeps the last commands, and only those.
+ */
+public class GitCommandJournalTest extends TestCase {
+
+    public void testDump() {
+        // GIVEN a journal with a command, a failure and a note
+        GitCommandJournal journal = new GitCommandJournal(4);
+        journal.record("git config --local user.email", "/project", 2500000, 0, false, "");
+        journal.record("git config --local user.name x", "/project", 1000000000, 255, false,
+                "error: could not lock config file .git/config: File exists\n");
+        journal.record("git rev-parse", "/project", 1000000000, -1, true, null);
+        journal.note("GitRunner gave up after 6 attempts");
+
+        // WHEN it's dumped
+        String[] lines = journal.dump().split("\n");
+
+        // THEN every entry is a line, oldest first
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].endsWith(" 2.5ms exit=0 /project: git config --local user.email"));
+        assertTrue(lines[1], lines[1].endsWith(" exit=255 /project: git config --local user.name x | error: could not lock config file .git/config: File exists"));
+        assertTrue(lines[2], lines[2].endsWith(" timeout /project: git rev-parse"));
+        assertTrue(lines[3], lines[3].endsWith(" note: GitRunner gave up after 6 attempts"));
+    }
+
+    public void testRingBuffer() {
+        // GIVEN a full journal
+        GitCommandJournal journal = new GitCommandJournal(2);
+        journal.note("first");
+        journal.note("second");
+
+        // WHEN another entry is recorded
+        journal.note("third");
+
+        // THEN the oldest is dropped
+        String dump = journal.dump();
+        assertFalse(dump.contains("first"));
+        assertTrue(dump.indexOf("second") < dump.indexOf("third"));
+        assertEquals(3, journal.getRecordedCount());
+    }
+
+    public void testStderrIsTruncated() {
+        // GIVEN git complained a lot
+        GitCommandJournal journal = new GitCommandJournal(1);
+        StringBuilder stderr = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            stderr.append("warning\n");
+        }
+        journal.record("git config", "/project", 0, 1, false, stderr.toString());
+
+        // THEN only the start is kept, on one line
+        String dump = journal.dump();
+        assertTrue(dump.length() < 300);
+        assertTrue(dump.endsWith("...\n"));
+    }
+
+    public void testGitRunnerRecords() {
+        // GIVEN the shared journal
+        GitCommandJournal journal = GitCommandJournal.getInstance();
+        long recorded = journal.getRecordedCount();
+
+        // WHEN git runs
+        new GitRunner(".").runGitCommand("rev-parse", "--git-dir");
+
+        // THEN it's in the journal
+        assertEquals(recorded + 1, journal.getRecordedCount());
+        assertTrue(journal.dump().contains("exit=0 .: git rev-parse --git-dir\n"));
+    }
+}
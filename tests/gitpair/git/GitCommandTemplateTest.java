@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import com.intellij.execution.configurations.GeneralCommandLine;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Make sure every git command gets the same quiet environment.
+ */
+public class GitCommandTemplateTest extends TestCase {
+
+    public void testNewCommandLine() {
+        // GIVEN a template built from the IDE's environment
+        Map<String, String> parent = new HashMap<String, String>();
+        parent.put("PATH", "/usr/bin");
+        parent.put("LC_ALL", "de_DE.UTF-8");
+        GitCommandTemplate template = new GitCommandTemplate("/usr/bin/git", "/tmp/project", parent);
+
+        // WHEN a command line is made
+        GeneralCommandLine commandLine = template.newCommandLine(Arrays.asList("config", "user.email"));
+
+        // THEN it only adds the arguments
+        assertEquals("/usr/bin/git", commandLine.getExePath());
+        assertEquals(Arrays.asList("config", "user.email"), commandLine.getParametersList());
+        assertEquals(GeneralCommandLine.ParentEnvironmentType.NONE, commandLine.getParentEnvironmentType());
+
+        // AND git runs quietly, in the C locale, without optional locks
+        Map<String, String> env = commandLine.getEnvironment();
+        assertEquals("/usr/bin", env.get("PATH"));
+        assertEquals("C", env.get("LC_ALL"));
+        assertEquals("0", env.get("GIT_TERMINAL_PROMPT"));
+        assertEquals("0", env.get("GIT_OPTIONAL_LOCKS"));
+    }
+
+    public void testImmutable() {
+        // GIVEN a template
+        Map<String, String> parent = new HashMap<String, String>();
+        GitCommandTemplate template = new GitCommandTemplate("/usr/bin/git", null, parent);
+
+        // WHEN the IDE's environment changes
+        parent.put("GIT_DIR", "/elsewhere");
+
+        // THEN the template doesn't
+        assertNull(template.getEnvironment().get("GIT_DIR"));
+        try {
+            template.getEnvironment().put("GIT_DIR", "/elsewhere");
+            fail("environment should be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+            // expected
+        }
+    }
+}
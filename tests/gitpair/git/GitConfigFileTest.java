@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Make sure git config files are read and written like git does.
+ */
+public class GitConfigFileTest extends TestCase {
+
+    private static final String CONFIG_SOURCE = "# comment\n" +
+            "[core]\n" +
+            "\tbare = false\n" +
+            "\tfilemode\n" +
+            "[user]\n" +
+            "\tname = Grumpy Cat ; the grumpiest\n" +
+            "\temail = \"grumpy.cat@example.com\"\n" +
+            "[remote \"Origin\"]\n" +
+            "\turl = git@example.com:cat/grumpy.git\n" +
+            "[branch.Master]\n" +
+            "\tremote = Origin\n" +
+            "[alias]\n" +
+            "\tlg = log \\\n" +
+            "\t\t--oneline\n" +
+            "\tspaced = \"  two  spaces  \"\n" +
+            "\ttabs = one\t\ttwo\n";
+
+    public void testGet() {
+        // GIVEN a config file
+        GitConfigFile config = GitConfigFile.parse(CONFIG_SOURCE);
+        assertNotNull(config);
+
+        // WHEN values are read
+        // THEN comments and quotes are removed
+        assertEquals("Grumpy Cat", config.get("user.name"));
+        assertEquals("grumpy.cat@example.com", config.get("user.email"));
+
+        // AND sections and names are case insensitive
+        assertEquals("false", config.get("CORE.Bare"));
+
+        // AND subsections are case sensitive
+        assertEquals("git@example.com:cat/grumpy.git", config.get("remote.Origin.url"));
+        assertNull(config.get("remote.origin.url"));
+
+        // AND the deprecated [section.subsection] syntax is lower case
+        assertEquals("Origin", config.get("branch.master.remote"));
+
+        // AND values without "=" have no value
+        assertNull(config.get("core.filemode"));
+
+        // AND missing values are null
+        assertNull(config.get("user.signingkey"));
+    }
+
+    public void testGetValueSyntax() {
+        // GIVEN a config file with some harder values
+        GitConfigFile config = GitConfigFile.parse(CONFIG_SOURCE);
+        assertNotNull(config);
+
+        // THEN continued lines are joined, keeping the indent like git
+        assertEquals("log   --oneline", config.get("alias.lg"));
+
+        // AND quoted whitespace is kept
+        assertEquals("  two  spaces  ", config.get("alias.spaced"));
+
+        // AND each unquoted whitespace character becomes a space
+        assertEquals("one  two", config.get("alias.tabs"));
+    }
+
+    public void testGetLastValue() {
+        // GIVEN a key set more than once
+        GitConfigFile config = GitConfigFile.parse("[user]\n\temail = first\n[user]\n\temail = second\n");
+        assertNotNull(config);
+
+        // THEN the last one wins, like git
+        assertEquals("second", config.get("user.email"));
+    }
+
+    public void testParseInvalid() {
+        // GIVEN files git refuses to read
+        // THEN they aren't parsed
+        assertNull(GitConfigFile.parse("email = no.section@example.com\n"));
+        assertNull(GitConfigFile.parse("[user\n\temail = a@example.com\n"));
+        assertNull(GitConfigFile.parse("[user]\n\temail = \"unterminated\n"));
+        assertNull(GitConfigFile.parse("[user]\n\temail = bad \\q escape\n"));
+        assertNull(GitConfigFile.parse("[user]\n\t\u00E9mail = a@example.com\n"));
+
+        // AND an empty file is fine
+        assertNotNull(GitConfigFile.parse(""));
+    }
+
+    public void testSetInvalidKey() {
+        // GIVEN a config file
+        GitConfigFile config = GitConfigFile.parse("[user]\n\temail = a@example.com\n");
+        assertNotNull(config);
+
+        // WHEN keys git refuses are set
+        // THEN they aren't written
+        assertFalse(config.set("user.\u00E9mail", "b@example.com"));
+        assertFalse(config.set("user.1email", "b@example.com"));
+        assertFalse(config.set("us_er.email", "b@example.com"));
+        assertEquals("[user]\n\temail = a@example.com\n", config.toText());
+    }
+
+    public void testSetExisting() {
+        // GIVEN a config file
+        GitConfigFile config = GitConfigFile.parse(CONFIG_SOURCE);
+        assertNotNull(config);
+
+        // WHEN an existing key is set
+        assertTrue(config.set("user.email", "grumpy.cat+pinkie.pie@example.com"));
+
+        // THEN only that line changes
+        assertTrue(config.isModified());
+        assertEquals(CONFIG_SOURCE.replace("\temail = \"grumpy.cat@example.com\"\n", "\temail = grumpy.cat+pinkie.pie@example.com\n"),
+                config.toText());
+    }
+
+    public void testSetNewKeyInExistingSection() {
+        // GIVEN a config file
+        GitConfigFile config = GitConfigFile.parse("[user]\n\tname = Grumpy Cat\n[core]\n\tbare = false\n");
+        assertNotNull(config);
+
+        // WHEN a new key is set in a section that exists
+        assertTrue(config.set("user.email", "grumpy.cat@example.com"));
+
+        // THEN it's added to the end of that section
+        assertEquals("[user]\n\tname = Grumpy Cat\n\temail = grumpy.cat@example.com\n[core]\n\tbare = false\n", config.toText());
+    }
+
+    public void testSetNewSection() {
+        // GIVEN an empty config file
+        GitConfigFile config = GitConfigFile.parse("");
+        assertNotNull(config);
+
+        // WHEN keys are set
+        assertTrue(config.set("user.name", "Grumpy Cat & Pinkie Pie"));
+        assertTrue(config.set("remote.My \"Remote\".url", "x"));
+
+        // THEN sections are created
+        assertEquals("[user]\n\tname = Grumpy Cat & Pinkie Pie\n[remote \"My \\\"Remote\\\"\"]\n\turl = x\n", config.toText());
+        assertEquals("x", GitConfigFile.parse(config.toText()).get("remote.My \"Remote\".url"));
+    }
+
+    public void testSetSameValue() {
+        // GIVEN a config file
+        GitConfigFile config = GitConfigFile.parse("[user]\n\temail = grumpy.cat@example.com\n");
+        assertNotNull(config);
+
+        // WHEN a key is set to the value it already has
+        assertTrue(config.set("user.email", "grumpy.cat@example.com"));
+
+        // THEN there's nothing to write
+        assertFalse(config.isModified());
+    }
+
+    public void testSetReplacesAll() {
+        // GIVEN a key set more than once
+        GitConfigFile config = GitConfigFile.parse("[user]\n\temail = first\n\tname = Pinkie Pie\n\temail = second\n");
+        assertNotNull(config);
+
+        // WHEN it is set
+        assertTrue(config.set("user.email", "third"));
+
+        // THEN there is only one value
+        assertEquals("[user]\n\tname = Pinkie Pie\n\temail = third\n", config.toText());
+    }
+
+    public void testSetContinuedValue() {
+        // GIVEN a value that continues over more than one line
+        GitConfigFile config = GitConfigFile.parse(CONFIG_SOURCE);
+        assertNotNull(config);
+
+        // WHEN it is set
+        assertTrue(config.set("alias.lg", "log"));
+
+        // THEN every line of the old value is replaced
+        assertTrue(config.toText().contains("\tlg = log\n\tspaced"));
+        assertEquals("log", config.get("alias.lg"));
+    }
+
+    public void testQuote() {
+        assertEquals("Grumpy Cat", GitConfigFile.quote("Grumpy Cat"));
+        assertEquals("\" leading\"", GitConfigFile.quote(" leading"));
+        assertEquals("\"trailing \"", GitConfigFile.quote("trailing "));
+        assertEquals("\"semi;colon\"", GitConfigFile.quote("semi;colon"));
+        assertEquals("\"hash#tag\"", GitConfigFile.quote("hash#tag"));
+        assertEquals("back\\\\slash \\\"quote\\\" \\n\\t", GitConfigFile.quote("back\\slash \"quote\" \n\t"));
+    }
+
+    public void testQuoteRoundTrip() {
+        // GIVEN values that need quoting
+        String[] values = {" leading", "trailing ", "semi;colon", "hash#tag", "back\\slash \"quote\"", "new\nline", "tab\t"};
+        for (String value : values) {
+            // WHEN they are written and read back
+            GitConfigFile config = GitConfigFile.parse("");
+            assertNotNull(config);
+            config.set("user.name", value);
+            GitConfigFile reread = GitConfigFile.parse(config.toText());
+
+            // THEN they are the same
+            assertNotNull(reread);
+            assertEquals(value, reread.get("user.name"));
+        }
+    }
+
+    public void testUnset() {
+        // GIVEN a config file
+        GitConfigFile config = GitConfigFile.parse("[user]\n\tname = Grumpy Cat\n\temail = grumpy.cat@example.com\n[core]\n\tbare = false\n");
+        assertNotNull(config);
+
+        // WHEN keys are unset
+        assertTrue(config.unset("user.name"));
+        assertTrue(config.unset("user.email"));
+
+        // THEN the lines are gone, and the section stays like git leaves it
+        assertEquals("[user]\n[core]\n\tbare = false\n", config.toText());
+        assertNull(config.get("user.name"));
+    }
+
+    public void testUnsetMissing() {
+        // GIVEN a config file
+        GitConfigFile config = GitConfigFile.parse("[core]\n\tbare = false\n");
+        assertNotNull(config);
+
+        // WHEN a missing key is unset
+        // THEN nothing changes
+        assertTrue(config.unset("user.name"));
+        assertFalse(config.isModified());
+    }
+
+    public void testKeyOnHeaderLine() {
+        // GIVEN a key on the same line as its section
+        GitConfigFile config = GitConfigFile.parse("[user] email = grumpy.cat@example.com\n");
+        assertNotNull(config);
+
+        // THEN it can be read
+        assertEquals("grumpy.cat@example.com", config.get("user.email"));
+
+        // AND it is left for git to change
+        assertFalse(config.set("user.email", "pinkie.pie@example.com"));
+        assertFalse(config.unset("user.email"));
+    }
+
+    public void testWindowsLineEndings() {
+        // GIVEN a file with Windows line endings
+        GitConfigFile config = GitConfigFile.parse("[user]\r\n\tname = Grumpy Cat\r\n");
+        assertNotNull(config);
+
+        // THEN values don't include the carriage return
+        assertEquals("Grumpy Cat", config.get("user.name"));
+
+        // AND new lines keep the line endings
+        config.set("user.email", "grumpy.cat@example.com");
+        assertEquals("[user]\r\n\tname = Grumpy Cat\r\n\temail = grumpy.cat@example.com\r\n", config.toText());
+    }
+
+    public void testHasIncludes() {
+        assertFalse(GitConfigFile.parse(CONFIG_SOURCE).hasIncludes());
+        assertTrue(GitConfigFile.parse("[include]\n\tpath = ~/.gitconfig.local\n").hasIncludes());
+        assertTrue(GitConfigFile.parse("[includeIf \"gitdir:~/work/\"]\n\tpath = ~/.gitconfig.work\n").hasIncludes());
+    }
+
+    public void testLock() throws IOException {
+        // GIVEN a config file
+        File dir = Files.createTempDirectory("gitpair").toFile();
+        File file = new File(dir, "config");
+        Files.write(file.toPath(), "[user]\n\tname = Grumpy Cat\n".getBytes(StandardCharsets.UTF_8));
+
+        // WHEN the lock is held
+        GitConfigLock lock = GitConfigLock.acquire(file);
+
+        // THEN nobody else can take it
+        try {
+            GitConfigLock.acquire(file);
+            fail("lock should be held");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        // WHEN the lock commits
+        lock.commit("[user]\n\tname = Pinkie Pie\n");
+
+        // THEN the file is replaced and the lock is gone
+        assertEquals("Pinkie Pie", GitConfigFile.read(file).get("user.name"));
+        assertFalse(new File(dir, "config.lock").exists());
+
+        // AND the lock can be taken again, and released without changing anything
+        GitConfigLock.acquire(file).release();
+        assertEquals("Pinkie Pie", GitConfigFile.read(file).get("user.name"));
+        assertFalse(new File(dir, "config.lock").exists());
+    }
+}
@@ -12,22 +12,18 @@ public class GitConfigSettings {
 
     public void save() {
         GitRunner gitRunner = new GitRunner(".");
-        String globalName = gitRunner.runGitCommand("config", "--global", "user.name");
-        if (globalName != null) {
-            oldGlobalName = globalName.trim();
-        }
-        String globalEmail = gitRunner.runGitCommand("config", "--global", "user.email");
-        if (globalEmail != null) {
-            oldGlobalEmail = globalEmail.trim();
-        }
-        String localName = gitRunner.runGitCommand("config", "--local", "user.name");
-        if (localName != null) {
-            oldLocalName = localName.trim();
-        }
-        String localEmail = gitRunner.runGitCommand("config", "--local", "user.email");
-        if (localEmail != null) {
-            oldLocalEmail = localEmail.trim();
-        }
+        GitConfigSnapshot snapshot = gitRunner.getConfigSnapshot();
+        if (snapshot == null) {
+            return;
+        }
+        oldGlobalName = trim(snapshot.get("user.name", GitConfigScope.GLOBAL));
+        oldGlobalEmail = trim(snapshot.get("user.email", GitConfigScope.GLOBAL));
+        oldLocalName = trim(snapshot.get("user.name", GitConfigScope.LOCAL));
+        oldLocalEmail = trim(snapshot.get("user.email", GitConfigScope.LOCAL));
+    }
+
+    private static String trim(String value) {
+        return value == null ? null : value.trim();
     }
 
     public void restore() {
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import junit.framework.TestCase;
+
+/**
+ * Make sure `git config --list -z --show-origin --show-scope` output is understood.
+ */
+public class GitConfigSnapshotTest extends TestCase {
+
+    private static final String LIST_OUTPUT = "global\0file:/home/cat/.gitconfig\0user.name\nGrumpy Cat\0" +
+            "global\0file:/home/cat/.gitconfig\0user.email\ngrumpy.cat@example.com\0" +
+            "local\0file:.git/config\0core.bare\nfalse\0" +
+            "local\0file:.git/config\0remote.Origin.url\ngit@example.com:cat/grumpy.git\0" +
+            "local\0file:.git/config\0alias.lg\nlog\n--oneline\0" +
+            "local\0file:.git/config\0core.filemode\0" +
+            "local\0file:.git/config\0user.email\ngrumpy.cat+pinkie.pie@example.com\0";
+
+    public void testParse() {
+        // GIVEN output from git
+        // WHEN it is parsed
+        GitConfigSnapshot snapshot = GitConfigSnapshot.parse(LIST_OUTPUT);
+
+        // THEN every entry is there
+        assertNotNull(snapshot);
+        assertEquals(7, snapshot.getEntries().size());
+
+        // AND the last value wins
+        GitConfigEntry email = snapshot.getEntry("user.email");
+        assertNotNull(email);
+        assertEquals("grumpy.cat+pinkie.pie@example.com", email.getValue());
+        assertEquals(GitConfigScope.LOCAL, email.getScope());
+        assertEquals("file:.git/config", email.getOrigin());
+
+        // AND values are kept per scope
+        assertEquals("grumpy.cat@example.com", snapshot.get("user.email", GitConfigScope.GLOBAL));
+        assertEquals("Grumpy Cat", snapshot.get("user.name"));
+        assertNull(snapshot.get("user.name", GitConfigScope.LOCAL));
+    }
+
+    public void testParseValues() {
+        GitConfigSnapshot snapshot = GitConfigSnapshot.parse(LIST_OUTPUT);
+        assertNotNull(snapshot);
+
+        // THEN values can contain newlines
+        assertEquals("log\n--oneline", snapshot.get("alias.lg"));
+
+        // AND keys without values are there, with no value
+        assertNotNull(snapshot.getEntry("core.filemode"));
+        assertNull(snapshot.get("core.filemode"));
+
+        // AND lookups are case insensitive except for the subsection
+        assertEquals("false", snapshot.get("Core.Bare"));
+        assertEquals("git@example.com:cat/grumpy.git", snapshot.get("REMOTE.Origin.URL"));
+        assertNull(snapshot.get("remote.origin.url"));
+    }
+
+    public void testParseEmpty() {
+        GitConfigSnapshot snapshot = GitConfigSnapshot.parse("");
+        assertNotNull(snapshot);
+        assertTrue(snapshot.getEntries().isEmpty());
+        assertNull(snapshot.get("user.email"));
+    }
+
+    public void testParseTruncated() {
+        assertNull(GitConfigSnapshot.parse("local\0file:.git/config\0user.email\ngrumpy"));
+        assertNull(GitConfigSnapshot.parse("local\0file:.git/config"));
+    }
+
+    public void testNormalizeKey() {
+        assertEquals("user.email", GitConfigSnapshot.normalizeKey("User.EMail"));
+        assertEquals("remote.Origin.url", GitConfigSnapshot.normalizeKey("Remote.Origin.URL"));
+        assertEquals("remote.a.b.url", GitConfigSnapshot.normalizeKey("remote.a.b.url"));
+    }
+}
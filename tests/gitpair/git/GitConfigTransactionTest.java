@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import com.intellij.execution.process.ProcessOutput;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Make sure grouped config changes are applied together or not at all.
+ */
+public class GitConfigTransactionTest extends TestCase {
+
+    private GitConfigSettings gitConfigSettings = new GitConfigSettings();
+    private File repository;
+    private GitRunner gitRunner;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        gitConfigSettings.save();
+        repository = Files.createTempDirectory("gitpair").toFile();
+        gitRunner = new GitRunner(repository.getPath());
+        gitRunner.runGitCommand("init");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+        gitConfigSettings.restore();
+    }
+
+    public void testCommit() {
+        // GIVEN a repository with a local user
+        gitRunner.runGitCommand("config", "--local", "user.name", "Grumpy Cat");
+        gitRunner.runGitCommand("config", "--local", "user.email", "grumpy.cat@example.com");
+
+        // WHEN the global user is set and the local user cleared in one transaction
+        boolean committed = gitRunner.beginTransaction()
+                .set(GitConfigScope.GLOBAL, "user.name", "Pinkie Pie")
+                .set(GitConfigScope.GLOBAL, "user.email", "pinkie.pie@example.com")
+                .unset(GitConfigScope.LOCAL, "user.name")
+                .unset(GitConfigScope.LOCAL, "user.email")
+                .commit();
+
+        // THEN git sees all the changes
+        assertTrue(committed);
+        GitConfigSnapshot snapshot = gitRunner.getConfigSnapshot();
+        assertNotNull(snapshot);
+        assertEquals("Pinkie Pie", snapshot.get("user.name"));
+        assertEquals("pinkie.pie@example.com", snapshot.get("user.email"));
+        assertNull(snapshot.get("user.name", GitConfigScope.LOCAL));
+        assertNull(snapshot.get("user.email", GitConfigScope.LOCAL));
+    }
+
+    public void testEmptyCommit() {
+        assertTrue(gitRunner.beginTransaction().commit());
+    }
+
+    public void testRollback() throws Exception {
+        // GIVEN a global user
+        gitRunner.runGitCommand("config", "--global", "user.name", "Grumpy Cat");
+
+        // AND git is holding the local config lock, and won't let go
+        File lockFile = new File(repository, ".git/config.lock");
+        assertTrue(lockFile.createNewFile());
+        gitRunner.setRetryPolicy(new GitRetryPolicy(3, 1, 5, 100));
+        long giveUps = GitMetrics.getInstance().getGiveUpCount();
+
+        try {
+            // WHEN a transaction changes both
+            boolean committed = gitRunner.beginTransaction()
+                    .set(GitConfigScope.GLOBAL, "user.name", "Pinkie Pie")
+                    .set(GitConfigScope.LOCAL, "user.name", "Pinkie Pie")
+                    .commit();
+
+            // THEN it fails, and the global user didn't change
+            assertFalse(committed);
+            assertEquals("Grumpy Cat\n", gitRunner.runGitCommand("config", "--global", "user.name"));
+            assertEquals(giveUps + 1, GitMetrics.getInstance().getGiveUpCount());
+        } finally {
+            assertTrue(lockFile.delete());
+        }
+    }
+
+    public void testRetryWhileLocked() throws Exception {
+        // GIVEN git is holding the local config lock for a moment
+        final File lockFile = new File(repository, ".git/config.lock");
+        assertTrue(lockFile.createNewFile());
+        Thread git = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // let go early
+                }
+                assertTrue(lockFile.delete());
+            }
+        });
+        git.start();
+        gitRunner.setRetryPolicy(new GitRetryPolicy(20, 10, 50, 5000));
+        long retries = GitMetrics.getInstance().getRetryCount();
+
+        // WHEN a transaction is committed
+        boolean committed = gitRunner.beginTransaction()
+                .set(GitConfigScope.LOCAL, "user.name", "Pinkie Pie")
+                .commit();
+        git.join();
+
+        // THEN it waits for the lock, instead of losing the change
+        assertTrue(committed);
+        assertEquals("Pinkie Pie\n", gitRunner.runGitCommand("config", "--local", "user.name"));
+        assertTrue(GitMetrics.getInstance().getRetryCount() > retries);
+    }
+
+    public void testIsBusy() {
+        assertTrue(GitRunner.isBusy(processOutput(255, "error: could not lock config file .git/config: File exists\n")));
+        assertTrue(GitRunner.isBusy(processOutput(128, "fatal: Unable to create '/repo/.git/index.lock': File exists.\n")));
+        assertFalse(GitRunner.isBusy(processOutput(2, "error: key does not contain a section: name\n")));
+        assertFalse(GitRunner.isBusy(processOutput(0, "")));
+
+        ProcessOutput timedOut = processOutput(-1, "");
+        timedOut.setTimeout();
+        assertTrue(GitRunner.isBusy(timedOut));
+    }
+
+    private static ProcessOutput processOutput(int exitCode, String stderr) {
+        ProcessOutput output = new ProcessOutput(exitCode);
+        output.appendStderr(stderr);
+        return output;
+    }
+
+    public void testOnlyGlobalAndLocal() {
+        try {
+            gitRunner.beginTransaction().set(GitConfigScope.SYSTEM, "user.name", "Grumpy Cat");
+            fail("system config can't be changed");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+}
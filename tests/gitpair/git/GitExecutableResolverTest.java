@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import com.intellij.util.EnvironmentUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Make sure git is found once, and its version understood.
+ */
+public class GitExecutableResolverTest extends TestCase {
+
+    public void testResolveOnce() {
+        // GIVEN a resolver
+        GitExecutableResolver resolver = new GitExecutableResolver();
+        String path = EnvironmentUtil.getValue("PATH");
+
+        // WHEN git is resolved twice with the same PATH
+        GitExecutable first = resolver.resolve(path);
+        long resolveCount = GitMetrics.getInstance().getResolveCount();
+        GitExecutable second = resolver.resolve(path);
+
+        // THEN it's found, and only looked for once
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(resolveCount, GitMetrics.getInstance().getResolveCount());
+
+        // AND its version is known
+        assertTrue(first.isVersionKnown());
+        assertTrue(first.getVersion().startsWith("git version "));
+    }
+
+    public void testPathChanged() throws IOException {
+        // GIVEN git was resolved
+        GitExecutableResolver resolver = new GitExecutableResolver();
+        assertNotNull(resolver.resolve(EnvironmentUtil.getValue("PATH")));
+
+        // WHEN the PATH changes to one without git
+        File empty = Files.createTempDirectory("gitpair").toFile();
+
+        // THEN it's looked for again
+        assertNull(resolver.resolve(empty.getPath()));
+    }
+
+    public void testNoGitIsRemembered() throws IOException {
+        // GIVEN a PATH without git
+        GitExecutableResolver resolver = new GitExecutableResolver();
+        String path = Files.createTempDirectory("gitpair").toFile().getPath();
+
+        // WHEN git is resolved twice
+        assertNull(resolver.resolve(path));
+        long resolveCount = GitMetrics.getInstance().getResolveCount();
+        assertNull(resolver.resolve(path));
+
+        // THEN the PATH is only searched once
+        assertEquals(resolveCount, GitMetrics.getInstance().getResolveCount());
+
+        // AND it's searched again when the PATH changes
+        assertNotNull(resolver.resolve(EnvironmentUtil.getValue("PATH")));
+    }
+
+    public void testInvalidate() {
+        // GIVEN git was resolved
+        GitExecutableResolver resolver = new GitExecutableResolver();
+        String path = EnvironmentUtil.getValue("PATH");
+        GitExecutable first = resolver.resolve(path);
+
+        // WHEN it's invalidated
+        resolver.invalidate();
+
+        // THEN it's looked for again
+        assertNotSame(first, resolver.resolve(path));
+    }
+
+    public void testCapabilities() {
+        GitExecutable modern = new GitExecutable("/usr/bin/git", "git version 2.39.2\n");
+        assertTrue(modern.supportsShowScope());
+        assertTrue(modern.supportsShowOrigin());
+        assertEquals("git version 2.39.2", modern.getVersion());
+
+        GitExecutable windows = new GitExecutable("C:/Git/bin/git.exe", "git version 2.26.0.windows.1\n");
+        assertTrue(windows.supportsShowScope());
+
+        GitExecutable apple = new GitExecutable("/usr/bin/git", "git version 2.24.3 (Apple Git-128)\n");
+        assertFalse(apple.supportsShowScope());
+        assertTrue(apple.supportsShowOrigin());
+
+        GitExecutable old = new GitExecutable("/usr/bin/git", "git version 1.8\n");
+        assertFalse(old.supportsShowOrigin());
+        assertTrue(old.supportsNullTerminatedConfig());
+
+        GitExecutable unknown = new GitExecutable("/usr/bin/git", null);
+        assertFalse(unknown.isVersionKnown());
+        assertFalse(unknown.supportsShowScope());
+    }
+}
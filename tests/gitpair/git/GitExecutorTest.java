@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Make sure git work runs off the caller's thread, and can't run forever or pile up.
+ */
+public class GitExecutorTest extends TestCase {
+
+    public void testValue() throws Exception {
+        // GIVEN an executor
+        GitExecutor executor = new GitExecutor(1, 1);
+
+        // WHEN a task is submitted
+        CompletableFuture<String> result = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return Thread.currentThread().getName();
+            }
+        }, 1000);
+
+        // THEN it runs on a git thread
+        assertTrue(result.get(1, TimeUnit.SECONDS).startsWith("GitPair-git-"));
+    }
+
+    public void testTimeout() throws Exception {
+        // GIVEN a task that never finishes
+        GitExecutor executor = new GitExecutor(1, 1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<Void> result = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+        }, 50);
+
+        // WHEN the timeout expires
+        try {
+            result.get(1, TimeUnit.SECONDS);
+            fail("should time out");
+        } catch (ExecutionException e) {
+            // THEN it fails with a timeout
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        // AND the task is interrupted
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    public void testCancel() throws Exception {
+        // GIVEN a running task
+        GitExecutor executor = new GitExecutor(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<Void> result = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+        }, 0);
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        // WHEN it is cancelled
+        result.cancel(true);
+
+        // THEN the task is interrupted
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    public void testRejected() throws Exception {
+        // GIVEN an executor with its thread and queue full
+        GitExecutor executor = new GitExecutor(1, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Callable<Void> blocked = new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                release.await();
+                return null;
+            }
+        };
+        CompletableFuture<Void> running = executor.submit(blocked, 0);
+        CompletableFuture<Void> queued = executor.submit(blocked, 0);
+
+        // WHEN another task is submitted
+        CompletableFuture<Void> rejected = executor.submit(blocked, 0);
+
+        // THEN it fails right away instead of waiting
+        assertTrue(rejected.isCompletedExceptionally());
+        try {
+            rejected.get();
+            fail("should be rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+
+        // AND the others still finish
+        release.countDown();
+        running.get(1, TimeUnit.SECONDS);
+        queued.get(1, TimeUnit.SECONDS);
+    }
+
+    public void testLaneWaitsForTimedOutTask() throws Exception {
+        // GIVEN a lane running a task that ignores being interrupted
+        GitExecutor executor = new GitExecutor(2, 2);
+        GitExecutor.Lane lane = executor.newLane();
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean firstDone = new AtomicBoolean();
+        CompletableFuture<Void> first = lane.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                while (true) {
+                    try {
+                        release.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        // like a git process, keeps going
+                    }
+                }
+                firstDone.set(true);
+                return null;
+            }
+        }, 50);
+
+        // WHEN it times out, and another task is submitted
+        CompletableFuture<Boolean> second = lane.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return firstDone.get();
+            }
+        }, 1000);
+        try {
+            first.get(1, TimeUnit.SECONDS);
+            fail("should time out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        // THEN the second task waits until the first has really stopped
+        Thread.sleep(100);
+        assertFalse(second.isDone());
+        release.countDown();
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+    }
+
+    public void testLaneTimeoutStartsWhenTaskStarts() throws Exception {
+        // GIVEN a lane with a slow task
+        GitExecutor executor = new GitExecutor(2, 2);
+        GitExecutor.Lane lane = executor.newLane();
+        lane.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                Thread.sleep(200);
+                return null;
+            }
+        }, 0);
+
+        // WHEN a quick task with a shorter timeout waits behind it
+        CompletableFuture<String> quick = lane.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        }, 100);
+
+        // THEN waiting doesn't count against its timeout
+        assertEquals("done", quick.get(1, TimeUnit.SECONDS));
+    }
+
+    public void testLaneSkipsCancelledTask() throws Exception {
+        // GIVEN a lane with a task waiting behind another
+        GitExecutor executor = new GitExecutor(2, 2);
+        GitExecutor.Lane lane = executor.newLane();
+        final CountDownLatch release = new CountDownLatch(1);
+        lane.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                release.await();
+                return null;
+            }
+        }, 0);
+        final AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Void> cancelled = lane.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                ran.set(true);
+                return null;
+            }
+        }, 0);
+        CompletableFuture<String> last = lane.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        }, 0);
+
+        // WHEN the waiting task is cancelled
+        cancelled.cancel(true);
+        release.countDown();
+
+        // THEN it never runs, and the lane keeps going
+        assertEquals("done", last.get(1, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Make sure every git process is counted where it can be seen.
+ */
+public class GitMetricsTest extends TestCase {
+
+    public void testCommandsAreTimed() {
+        // GIVEN the metrics so far
+        GitMetrics metrics = GitMetrics.getInstance();
+        LatencyHistogram before = metrics.getCommandLatency("rev-parse", 0);
+        long count = before == null ? 0 : before.getCount();
+        long spawns = metrics.getSpawnCount();
+
+        // WHEN git runs
+        new GitRunner(".").runGitCommand("rev-parse", "--git-dir");
+
+        // THEN it's timed by subcommand and exit code
+        LatencyHistogram after = metrics.getCommandLatency("rev-parse", 0);
+        assertNotNull(after);
+        assertEquals(count + 1, after.getCount());
+        assertEquals(spawns + 1, metrics.getSpawnCount());
+    }
+
+    public void testOperationSpawns() {
+        // GIVEN an operation
+        GitMetrics metrics = GitMetrics.getInstance();
+        long spawns = metrics.getOperationSpawnCount("GitMetricsTest.outer");
+        long innerSpawns = metrics.getOperationSpawnCount("GitMetricsTest.inner");
+
+        // WHEN git runs during it, and during an operation nested in it
+        Object outer = metrics.beginOperation("GitMetricsTest.outer");
+        try {
+            new GitRunner(".").runGitCommand("rev-parse", "--git-dir");
+            Object inner = metrics.beginOperation("GitMetricsTest.inner");
+            try {
+                new GitRunner(".").runGitCommand("rev-parse", "--git-dir");
+            } finally {
+                metrics.endOperation(inner);
+            }
+        } finally {
+            metrics.endOperation(outer);
+        }
+        new GitRunner(".").runGitCommand("rev-parse", "--git-dir");
+
+        // THEN each spawn counts against the innermost operation only while it runs
+        assertEquals(spawns + 1, metrics.getOperationSpawnCount("GitMetricsTest.outer"));
+        assertEquals(innerSpawns + 1, metrics.getOperationSpawnCount("GitMetricsTest.inner"));
+    }
+
+    public void testMBean() throws Exception {
+        // GIVEN the metrics are registered, twice like two projects would
+        GitMetrics.getInstance().registerMBean();
+        GitMetrics.getInstance().registerMBean();
+
+        // THEN JMX can read them
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(GitMetrics.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(GitMetrics.getInstance().getSpawnCount(), server.getAttribute(name, "SpawnCount"));
+        assertTrue(((String) server.getAttribute(name, "Report")).startsWith("git commands"));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import junit.framework.TestCase;
+
+/**
+ * Make sure busy writes back off, and stop trying in time.
+ */
+public class GitRetryPolicyTest extends TestCase {
+
+    public void testDelayGrowsWithJitter() {
+        // GIVEN a policy
+        GitRetryPolicy policy = new GitRetryPolicy(10, 20, 100, 1000);
+
+        for (int i = 0; i < 100; i++) {
+            // THEN each wait is between half and all of the exponential delay
+            assertBetween(10, 20, policy.getDelayMillis(1));
+            assertBetween(20, 40, policy.getDelayMillis(2));
+            assertBetween(40, 80, policy.getDelayMillis(3));
+
+            // AND it stops growing at the maximum
+            assertBetween(50, 100, policy.getDelayMillis(4));
+            assertBetween(50, 100, policy.getDelayMillis(100));
+        }
+    }
+
+    public void testShouldRetry() {
+        // GIVEN a policy
+        GitRetryPolicy policy = new GitRetryPolicy(3, 20, 100, 1000);
+
+        // THEN it retries until the attempts run out
+        assertTrue(policy.shouldRetry(1, 0));
+        assertTrue(policy.shouldRetry(2, 0));
+        assertFalse(policy.shouldRetry(3, 0));
+
+        // AND until the budget runs out
+        assertTrue(policy.shouldRetry(1, 1000));
+        assertFalse(policy.shouldRetry(1, 1001));
+
+        // AND no retry policy never retries
+        assertFalse(GitRetryPolicy.NONE.shouldRetry(1, 0));
+    }
+
+    public void testInvalid() {
+        try {
+            new GitRetryPolicy(0, 20, 100, 1000);
+            fail("at least one attempt");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual + " should be at least " + min, actual >= min);
+        assertTrue(actual + " should be at most " + max, actual <= max);
+    }
+}
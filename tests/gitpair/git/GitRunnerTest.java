@@ -102,4 +102,73 @@ public class GitRunnerTest extends TestCase {
         // THEN it should set current user's name
         assertEquals("Test Global User Name", gitRunner.getUserName());
     }
-}
\ No newline at end of file
+
+    public void testGetConfigSnapshot() {
+        // GIVEN a project with a local and global user
+        GitRunner gitRunner = new GitRunner(".");
+        gitRunner.runGitCommand("init");
+        gitRunner.runGitCommand("config", "--global", "user.email", "global@example.com");
+        gitRunner.runGitCommand("config", "user.email", "local@example.com");
+
+        // WHEN a snapshot is taken
+        GitConfigSnapshot snapshot = gitRunner.getConfigSnapshot();
+
+        // THEN it has both, and knows where each came from
+        assertNotNull(snapshot);
+        assertEquals("local@example.com", snapshot.get("user.email"));
+        assertEquals(GitConfigScope.LOCAL, snapshot.getEntry("user.email").getScope());
+        assertEquals("global@example.com", snapshot.get("user.email", GitConfigScope.GLOBAL));
+    }
+
+    public void testGetConfigEntry() {
+        // GIVEN a project with only a global user
+        GitRunner gitRunner = new GitRunner(".");
+        gitRunner.runGitCommand("init");
+        gitRunner.setUserEmail("global@example.com", true);
+
+        // WHEN the entry is read
+        GitConfigEntry entry = gitRunner.getConfigEntry("user.email");
+
+        // THEN it is the global one
+        assertNotNull(entry);
+        assertEquals("global@example.com", entry.getValue());
+        assertEquals(GitConfigScope.GLOBAL, entry.getScope());
+    }
+
+    public void testUnsetConfigEntryDoesNotRunGit() {
+        // GIVEN a project without a user
+        GitRunner gitRunner = new GitRunner(".");
+        gitRunner.runGitCommand("init");
+        gitRunner.unsetUserAndEmail(false);
+        gitRunner.unsetUserAndEmail(true);
+        long spawnsBefore = GitMetrics.getInstance().getSpawnCount();
+
+        // WHEN the user is read
+        // THEN it isn't set, and git wasn't asked
+        assertNull(gitRunner.getUserName());
+        assertNull(gitRunner.getUserEmail());
+        assertEquals(spawnsBefore, GitMetrics.getInstance().getSpawnCount());
+    }
+
+    public void testSetUserNameAndEmail() {
+        // GIVEN a system with git installed and a project configured with git
+        GitRunner gitRunner = new GitRunner(".");
+        gitRunner.runGitCommand("init");
+        gitRunner.runGitCommand("config", "user.name", "setup");
+        gitRunner.runGitCommand("config", "user.email", "setup@example.com");
+
+        // WHEN the name and email are set globally together
+        assertTrue(gitRunner.setUserNameAndEmail("Grumpy Cat & Pinkie Pie", "grumpy.cat+pinkie.pie@example.com", true));
+
+        // THEN both changed, and the local values no longer override them
+        assertEquals("Grumpy Cat & Pinkie Pie", gitRunner.getUserName());
+        assertEquals("grumpy.cat+pinkie.pie@example.com", gitRunner.getUserEmail());
+        assertNull(gitRunner.runGitCommand("config", "--local", "user.email"));
+
+        // WHEN both are null
+        assertTrue(gitRunner.setUserNameAndEmail(null, null, true));
+
+        // THEN the user is unset
+        assertNull(gitRunner.runGitCommand("config", "--global", "user.email"));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Git config kept in memory, for tests and benchmarks that shouldn't fork git or touch the real config.
+ * Records every change, and counts reads and commits, so tests can assert exactly what was asked of git.
+ */
+public class InMemoryGitBackend implements GitBackend {
+
+    private final Map<String, String> globalConfig = new LinkedHashMap<String, String>();
+    private final Map<String, String> localConfig = new LinkedHashMap<String, String>();
+    private final List<String> operations = new ArrayList<String>();
+    private int readCount;
+    private int commitCount;
+    private boolean failing;
+
+    @Override
+    @NotNull
+    public synchronized GitConfigSnapshot getConfigSnapshot() {
+        readCount++;
+        List<GitConfigEntry> entries = new ArrayList<GitConfigEntry>(globalConfig.size() + localConfig.size());
+        for (Map.Entry<String, String> entry : globalConfig.entrySet()) {
+            entries.add(new GitConfigEntry(entry.getKey(), entry.getValue(), GitConfigScope.GLOBAL, "memory:global"));
+        }
+        for (Map.Entry<String, String> entry : localConfig.entrySet()) {
+            entries.add(new GitConfigEntry(entry.getKey(), entry.getValue(), GitConfigScope.LOCAL, "memory:local"));
+        }
+        return new GitConfigSnapshot(entries);
+    }
+
+    @Override
+    @Nullable
+    public GitConfigEntry getConfigEntry(@NotNull String key) {
+        return getConfigSnapshot().getEntry(key);
+    }
+
+    @Override
+    @NotNull
+    public GitConfigTransaction beginTransaction() {
+        return new GitConfigTransaction(this);
+    }
+
+    @Override
+    public synchronized boolean commit(@NotNull GitConfigTransaction transaction) {
+        commitCount++;
+        if (failing) {
+            return false;
+        }
+        for (GitConfigTransaction.Operation operation : transaction.getOperations()) {
+            String key = GitConfigSnapshot.normalizeKey(operation.key);
+            Map<String, String> config = operation.scope == GitConfigScope.GLOBAL ? globalConfig : localConfig;
+            if (operation.isUnset()) {
+                config.remove(key);
+                operations.add("unset " + operation.scope.getGitName() + " " + key);
+            } else {
+                config.put(key, operation.value);
+                operations.add("set " + operation.scope.getGitName() + " " + key + " " + operation.value);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link GitRunner#setUserEmail(String, boolean)}, without recording it.
+     */
+    public synchronized void setUserEmail(@NotNull String fullEmail, boolean global) {
+        if (global) {
+            globalConfig.put("user.email", fullEmail);
+            localConfig.remove("user.email");
+        } else {
+            localConfig.put("user.email", fullEmail);
+        }
+    }
+
+    /**
+     * Unset user.email everywhere, like "git config --unset" outside the IDE, without recording it.
+     */
+    public synchronized void unsetUserEmail() {
+        globalConfig.remove("user.email");
+        localConfig.remove("user.email");
+    }
+
+    /**
+     * Same as {@link GitRunner#getUserEmail()}, without counting it.
+     */
+    @Nullable
+    public synchronized String getUserEmail() {
+        String local = localConfig.get("user.email");
+        return local != null ? local : globalConfig.get("user.email");
+    }
+
+    /**
+     * @param failing true to fail every commit, like git config that stays locked.
+     */
+    public synchronized void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    /**
+     * @return every change committed, for example "set local user.email grumpy.cat@example.com".
+     */
+    @NotNull
+    public synchronized List<String> getOperations() {
+        return Collections.unmodifiableList(new ArrayList<String>(operations));
+    }
+
+    public synchronized int getReadCount() {
+        return readCount;
+    }
+
+    public synchronized int getCommitCount() {
+        return commitCount;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import junit.framework.TestCase;
+
+import java.util.Locale;
+
+/**
+ * Make sure percentiles are close without keeping every sample.
+ */
+public class LatencyHistogramTest extends TestCase {
+
+    public void testBuckets() {
+        // every latency falls in a bucket whose upper bound is at least it, and within a quarter of it
+        for (long micros = 0; micros < 100000; micros++) {
+            long upper = LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(micros));
+            assertTrue(micros + " > " + upper, upper >= micros);
+            assertTrue(micros + " << " + upper, upper <= micros + micros / 4 + 1);
+        }
+    }
+
+    public void testPercentiles() {
+        // GIVEN 99 fast samples and 1 slow one
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(2000000);
+        }
+        histogram.record(500000000);
+
+        // THEN p50 is fast, p100 is slow
+        assertEquals(100, histogram.getCount());
+        assertBetween(2000000, 2500000, histogram.getPercentileNanos(50));
+        assertBetween(2000000, 2500000, histogram.getPercentileNanos(99));
+        assertEquals(500000000, histogram.getPercentileNanos(100));
+        assertEquals(500000000, histogram.getMaxNanos());
+    }
+
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(99));
+        assertEquals("n=0 p50=0.0ms p99=0.0ms max=0.0ms", histogram.toString());
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual + " should be at least " + min, actual >= min);
+        assertTrue(actual + " should be at most " + max, actual <= max);
+    }
+
+    public void testFormatMillisIgnoresLocale() {
+        // GIVEN a user whose decimal separator is a comma
+        Locale before = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            // THEN diagnostics still use a point
+            assertEquals("1.5ms", LatencyHistogram.formatMillis(1500000));
+        } finally {
+            Locale.setDefault(before);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Make sure the file backend never runs git.
+ */
+public class NativeGitBackendTest extends TestCase {
+
+    private File repository;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        repository = Files.createTempDirectory("gitpair").toFile();
+        new GitRunner(repository.getPath()).runGitCommand("init");
+    }
+
+    public void testNoSpawns() {
+        // GIVEN a file backend
+        NativeGitBackend backend = new NativeGitBackend(repository.getPath());
+        long spawns = GitMetrics.getInstance().getSpawnCount();
+
+        // WHEN the user is written and read back
+        assertTrue(backend.beginTransaction().setUserNameAndEmail("Grumpy Cat", "grumpy.cat@example.com", false).commit());
+        GitConfigEntry entry = backend.getConfigEntry("user.email");
+
+        // THEN git wasn't run
+        assertEquals(spawns, GitMetrics.getInstance().getSpawnCount());
+        assertNotNull(entry);
+        assertEquals("grumpy.cat@example.com", entry.getValue());
+        assertEquals(GitConfigScope.LOCAL, entry.getScope());
+
+        // AND git agrees
+        assertEquals("Grumpy Cat\n", new GitRunner(repository.getPath()).runGitCommand("config", "--local", "user.name"));
+    }
+
+    public void testLocked() throws Exception {
+        // GIVEN git is holding the local config lock
+        File lockFile = new File(repository, ".git/config.lock");
+        assertTrue(lockFile.createNewFile());
+        NativeGitBackend backend = new NativeGitBackend(repository.getPath());
+        backend.setRetryPolicy(GitRetryPolicy.NONE);
+
+        // WHEN the user is written
+        // THEN it fails without asking git
+        long spawns = GitMetrics.getInstance().getSpawnCount();
+        assertFalse(backend.beginTransaction().setUserValue("user.name", "Grumpy Cat", false).commit());
+        assertEquals(spawns, GitMetrics.getInstance().getSpawnCount());
+        assertTrue(lockFile.delete());
+    }
+}
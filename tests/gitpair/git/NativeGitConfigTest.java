@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.git;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Make sure config files are found and changed without running git.
+ */
+public class NativeGitConfigTest extends TestCase {
+
+    private File repository;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        repository = Files.createTempDirectory("gitpair").toFile();
+        GitRunner gitRunner = new GitRunner(repository.getPath());
+        gitRunner.runGitCommand("init");
+    }
+
+    public void testFindsLocalConfig() throws IOException {
+        // GIVEN a sub folder of a repository
+        File subFolder = new File(repository, "src/main");
+        assertTrue(subFolder.mkdirs());
+
+        // WHEN the local config is looked up
+        NativeGitConfig nativeGitConfig = new NativeGitConfig(subFolder.getPath());
+
+        // THEN it is found like git finds it
+        assertEquals(new File(repository, ".git/config").getCanonicalFile(), nativeGitConfig.getLocalConfigFile().getCanonicalFile());
+    }
+
+    public void testConfigFiles() throws IOException {
+        // GIVEN a repository
+        NativeGitConfig nativeGitConfig = new NativeGitConfig(repository.getPath());
+
+        // WHEN the files to watch are asked for
+        List<File> files = nativeGitConfig.getConfigFiles();
+
+        // THEN they are the global files and the local one
+        assertEquals(3, files.size());
+        assertEquals(".gitconfig", files.get(1).getName());
+        assertEquals(new File(repository, ".git/config").getCanonicalFile(), files.get(2).getCanonicalFile());
+    }
+
+    public void testFindsLinkedConfig() throws IOException {
+        // GIVEN a worktree with a .git file pointing at the real git directory
+        File worktree = Files.createTempDirectory("gitpair").toFile();
+        File worktreeGitDir = new File(repository, ".git/worktrees/other");
+        assertTrue(worktreeGitDir.mkdirs());
+        Files.write(new File(worktree, ".git").toPath(), ("gitdir: " + worktreeGitDir.getPath() + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(worktreeGitDir, "commondir").toPath(), "../..\n".getBytes(StandardCharsets.UTF_8));
+
+        // WHEN the local config is looked up
+        NativeGitConfig nativeGitConfig = new NativeGitConfig(worktree.getPath());
+
+        // THEN it is the shared config
+        assertEquals(new File(repository, ".git/config").getCanonicalFile(), nativeGitConfig.getLocalConfigFile().getCanonicalFile());
+    }
+
+    public void testNoRepository() throws IOException {
+        // GIVEN a folder that isn't in a repository
+        File folder = Files.createTempDirectory("gitpair").toFile();
+        NativeGitConfig nativeGitConfig = new NativeGitConfig(folder.getPath());
+
+        // THEN local writes are left for git
+        if (nativeGitConfig.getLocalConfigFile() == null) {
+            assertFalse(nativeGitConfig.set("user.name", "Grumpy Cat", false));
+        }
+    }
+
+    public void testSetIsReadByGit() {
+        // GIVEN a repository
+        NativeGitConfig nativeGitConfig = new NativeGitConfig(repository.getPath());
+        GitRunner gitRunner = new GitRunner(repository.getPath());
+
+        // WHEN the local user is set without git
+        assertTrue(nativeGitConfig.set("user.name", "Grumpy Cat & Pinkie Pie; \"the pair\"", false));
+        assertTrue(nativeGitConfig.set("user.email", "grumpy.cat+pinkie.pie@example.com", false));
+
+        // THEN git reads the same values
+        assertEquals("Grumpy Cat & Pinkie Pie; \"the pair\"\n", gitRunner.runGitCommand("config", "--local", "user.name"));
+        assertEquals("grumpy.cat+pinkie.pie@example.com\n", gitRunner.runGitCommand("config", "--local", "user.email"));
+        assertEquals("grumpy.cat+pinkie.pie@example.com", nativeGitConfig.get("user.email"));
+
+        // AND the lock was released
+        assertFalse(new File(repository, ".git/config.lock").exists());
+    }
+
+    public void testReadsWhatGitWrote() {
+        // GIVEN a value written by git
+        GitRunner gitRunner = new GitRunner(repository.getPath());
+        gitRunner.runGitCommand("config", "--local", "user.name", " Grumpy\tCat # \\ ");
+
+        // WHEN it is read without git
+        NativeGitConfig nativeGitConfig = new NativeGitConfig(repository.getPath());
+
+        // THEN it's the same value
+        assertEquals(" Grumpy\tCat # \\ ", nativeGitConfig.get("user.name"));
+    }
+
+    public void testUnset() {
+        // GIVEN a repository with a local user
+        GitRunner gitRunner = new GitRunner(repository.getPath());
+        gitRunner.runGitCommand("config", "--local", "user.name", "Grumpy Cat");
+        gitRunner.runGitCommand("config", "--local", "user.email", "grumpy.cat@example.com");
+
+        // WHEN the user is unset without git
+        NativeGitConfig nativeGitConfig = new NativeGitConfig(repository.getPath());
+        assertTrue(nativeGitConfig.unset(false, "user.name", "user.email"));
+
+        // THEN git doesn't see the user
+        assertNull(gitRunner.runGitCommand("config", "--local", "user.name"));
+        assertNull(gitRunner.runGitCommand("config", "--local", "user.email"));
+    }
+
+    public void testLockHeld() throws IOException {
+        // GIVEN git is holding the config lock
+        File lockFile = new File(repository, ".git/config.lock");
+        assertTrue(lockFile.createNewFile());
+
+        // WHEN a value is set
+        NativeGitConfig nativeGitConfig = new NativeGitConfig(repository.getPath());
+
+        // THEN it backs off without touching git's lock
+        assertFalse(nativeGitConfig.set("user.name", "Grumpy Cat", false));
+        assertTrue(lockFile.exists());
+        assertTrue(lockFile.delete());
+    }
+
+    public void testIncludesAreLeftForGit() {
+        // GIVEN a local config that includes another file
+        GitRunner gitRunner = new GitRunner(repository.getPath());
+        gitRunner.runGitCommand("config", "--local", "include.path", "other.config");
+        gitRunner.runGitCommand("config", "--local", "user.name", "Grumpy Cat");
+
+        // WHEN read without git
+        NativeGitConfig nativeGitConfig = new NativeGitConfig(repository.getPath());
+
+        // THEN it doesn't guess
+        assertNull(nativeGitConfig.get("user.name"));
+    }
+
+    public void testSnapshot() {
+        // GIVEN a repository with local values
+        GitRunner gitRunner = new GitRunner(repository.getPath());
+        gitRunner.runGitCommand("config", "--local", "user.email", "grumpy.cat@example.com");
+
+        // WHEN a snapshot is read without git
+        GitConfigSnapshot snapshot = new NativeGitConfig(repository.getPath()).snapshot();
+
+        // THEN it matches what git lists for the local config
+        assertNotNull(snapshot);
+        GitConfigEntry entry = snapshot.getEntry("user.email");
+        assertNotNull(entry);
+        assertEquals("grumpy.cat@example.com", entry.getValue());
+        assertEquals(GitConfigScope.LOCAL, entry.getScope());
+        GitConfigSnapshot gitSnapshot = gitRunner.getConfigSnapshot();
+        assertNotNull(gitSnapshot);
+        assertEquals(gitSnapshot.get("core.bare", GitConfigScope.LOCAL), snapshot.get("core.bare", GitConfigScope.LOCAL));
+    }
+}
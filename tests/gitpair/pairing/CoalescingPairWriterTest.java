@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import gitpair.git.GitMetrics;
+import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writing quick changes to git once.
+ */
+public class CoalescingPairWriterTest extends TestCase {
+
+    private final AtomicInteger writes = new AtomicInteger();
+    private final CoalescingPairWriter.Write countingWrite = new CoalescingPairWriter.Write() {
+        @NotNull
+        @Override
+        public CompletableFuture<Boolean> write() {
+            writes.incrementAndGet();
+            return CompletableFuture.completedFuture(true);
+        }
+    };
+
+    public void testQuickChangesWriteOnce() throws Exception {
+        // GIVEN a writer with a short quiet period
+        CoalescingPairWriter writer = new CoalescingPairWriter(countingWrite, 50);
+        long writesBefore = GitMetrics.getInstance().getPairWriteCount();
+
+        // WHEN the pair changes three times quickly
+        CompletableFuture<Boolean> first = writer.changed();
+        writer.changed();
+        CompletableFuture<Boolean> last = writer.changed();
+
+        // THEN every change finishes with the same write
+        assertSame(first, last);
+        assertTrue(last.get(5, TimeUnit.SECONDS));
+        assertEquals(1, writes.get());
+        assertFalse(writer.hasPendingChanges());
+        assertEquals(writesBefore + 1, GitMetrics.getInstance().getPairWriteCount());
+    }
+
+    public void testFlushWritesNow() throws Exception {
+        // GIVEN a change waiting for a long quiet period
+        CoalescingPairWriter writer = new CoalescingPairWriter(countingWrite, 60000);
+        CompletableFuture<Boolean> changed = writer.changed();
+        assertTrue(writer.hasPendingChanges());
+
+        // WHEN it's flushed
+        CompletableFuture<Boolean> flushed = writer.flush();
+
+        // THEN it's written right away, once
+        assertTrue(flushed.get(5, TimeUnit.SECONDS));
+        assertTrue(changed.isDone());
+        assertEquals(1, writes.get());
+
+        // AND flushing again has nothing to write
+        assertTrue(writer.flush().get(5, TimeUnit.SECONDS));
+        assertEquals(1, writes.get());
+    }
+
+    public void testFlushWaitsForWriteInProgress() throws Exception {
+        // GIVEN a write that git hasn't finished
+        final CompletableFuture<Boolean> git = new CompletableFuture<Boolean>();
+        CoalescingPairWriter writer = new CoalescingPairWriter(new CoalescingPairWriter.Write() {
+            @NotNull
+            @Override
+            public CompletableFuture<Boolean> write() {
+                return git;
+            }
+        }, 60000);
+        writer.changed();
+        writer.flush();
+
+        // WHEN it's flushed again, for example by a commit
+        CompletableFuture<Boolean> flushed = writer.flush();
+
+        // THEN it waits for the write already started
+        assertFalse(flushed.isDone());
+        git.complete(true);
+        assertTrue(flushed.get(5, TimeUnit.SECONDS));
+        assertTrue(writer.flush().isDone());
+    }
+
+    public void testFlushAfterFailedWrite() throws Exception {
+        // GIVEN a write git didn't take
+        CoalescingPairWriter writer = new CoalescingPairWriter(new CoalescingPairWriter.Write() {
+            @NotNull
+            @Override
+            public CompletableFuture<Boolean> write() {
+                return CompletableFuture.completedFuture(false);
+            }
+        }, 60000);
+        writer.changed();
+        assertFalse(writer.flush().get(5, TimeUnit.SECONDS));
+
+        // WHEN it's flushed again with nothing waiting, for example by a commit
+        CompletableFuture<Boolean> flushed = writer.flush();
+
+        // THEN it's told git doesn't have the pair
+        assertTrue(flushed.isDone());
+        assertFalse(flushed.get());
+    }
+}
@@ -51,7 +51,7 @@ public class PairCommitStyleConfigTest extends TestCase {
         assertEquals("rw", teamMembers.get(1).getInitials());
     }
 
-    public void testUpdateTeamMemberEmail() {
+    public void testTeamMemberWithEmail() {
         // GIVEN a team member
         Node config = Yaml.parse(COMMIT_STYLE_YAML);
         Node teamMemberNode = config.get("pairs").get("rw");
@@ -60,39 +60,42 @@ public class PairCommitStyleConfigTest extends TestCase {
         // AND an email_addresses section
         Node emailAddressesNode = config.get("email_addresses");
 
-        // WHEN the team member is updated
-        PairConfig.updateTeamMemberEmail(teamMember, emailAddressesNode);
+        // WHEN the team member is given their email
+        TeamMember updated = PairConfig.teamMemberWithEmail(teamMember, emailAddressesNode);
 
         // THEN it should contain the correct fields
-        assertNotNull(teamMember);
-        assertEquals("rw", teamMember.getInitials());
-        assertEquals("Robert A. Wallis", teamMember.getName());
-        assertEquals("smilingrob@gmail.com", teamMember.getEmail());
+        assertNotNull(updated);
+        assertEquals("rw", updated.getInitials());
+        assertEquals("Robert A. Wallis", updated.getName());
+        assertEquals("smilingrob@gmail.com", updated.getEmail());
+
+        // AND the parsed team member didn't change
+        assertNull(teamMember.getEmail());
 
         // WHEN a bad node is parsed
         // THEN it should not crash
-        PairConfig.updateTeamMemberEmail(null, null);
+        assertNull(PairConfig.teamMemberWithEmail(null, null));
 
         Node bad1 = new Node(null);
-        PairConfig.updateTeamMemberEmail(teamMember, bad1);
+        assertSame(teamMember, PairConfig.teamMemberWithEmail(teamMember, bad1));
 
         bad1.setKey("gc");
-        PairConfig.updateTeamMemberEmail(teamMember, bad1);
+        assertSame(teamMember, PairConfig.teamMemberWithEmail(teamMember, bad1));
 
         // WHEN it's not a full address
         // THEN don't crash
         bad1.setValue("@");
-        PairConfig.updateTeamMemberEmail(teamMember, bad1);
+        assertSame(teamMember, PairConfig.teamMemberWithEmail(teamMember, bad1));
 
         // WHEN it's not a full address
         // THEN don't crash
         bad1.setValue(".");
-        PairConfig.updateTeamMemberEmail(teamMember, bad1);
+        assertSame(teamMember, PairConfig.teamMemberWithEmail(teamMember, bad1));
 
         // WHEN it's empty
         // THEN don't crash
         bad1.setValue("");
-        PairConfig.updateTeamMemberEmail(teamMember, bad1);
+        assertSame(teamMember, PairConfig.teamMemberWithEmail(teamMember, bad1));
     }
 
     public void testGetTeamMemberByInitials() {
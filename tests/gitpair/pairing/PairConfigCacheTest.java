@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Parsing .pairs files only when they change.
+ */
+public class PairConfigCacheTest extends TestCase {
+
+    private File folder;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        folder = Files.createTempDirectory("gitpair").toFile();
+    }
+
+    public void testUnchangedFileIsNotParsedAgain() throws IOException {
+        // GIVEN a .pairs file written a while ago
+        PairConfigCache cache = new PairConfigCache(4);
+        File pairs = write("old", PairConfigTest.YAML_SOURCE);
+        assertTrue(pairs.setLastModified(System.currentTimeMillis() - 60000));
+
+        // WHEN it's asked for twice
+        PairConfig first = cache.get(pairs);
+        PairConfig second = cache.get(pairs);
+
+        // THEN it's parsed once
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(3, first.getTeamMembers().size());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    public void testTouchedFileIsNotParsedAgain() throws IOException {
+        // GIVEN a .pairs file that was read
+        PairConfigCache cache = new PairConfigCache(4);
+        File pairs = write("touched", PairConfigTest.YAML_SOURCE);
+        PairConfig first = cache.get(pairs);
+
+        // WHEN its modified time changes, but not its contents
+        assertTrue(pairs.setLastModified(System.currentTimeMillis() - 60000));
+
+        // THEN the same config is returned
+        assertSame(first, cache.get(pairs));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testChangedFileIsParsedAgain() throws IOException {
+        // GIVEN a .pairs file that was read just now
+        PairConfigCache cache = new PairConfigCache(4);
+        File pairs = write("changed", PairConfigTest.YAML_SOURCE);
+        long modified = pairs.lastModified();
+        PairConfig first = cache.get(pairs);
+
+        // WHEN it's changed to something the same size, within the same modified time
+        write("changed", PairConfigTest.YAML_SOURCE.replace("Grumpy Cat", "Grumpy Dog"));
+        assertTrue(pairs.setLastModified(modified));
+
+        // THEN it's parsed again
+        PairConfig second = cache.get(pairs);
+        assertNotSame(first, second);
+        assertEquals("Grumpy Dog", second.getTeamMembers().get(0).getName());
+    }
+
+    public void testMissingFile() {
+        // GIVEN no .pairs file
+        PairConfigCache cache = new PairConfigCache(4);
+
+        // WHEN it's asked for
+        PairConfig config = cache.get(new File(folder, "missing"));
+
+        // THEN there is no config
+        assertNull(config);
+    }
+
+    public void testLeastRecentlyUsedIsForgotten() throws IOException {
+        // GIVEN a cache that only remembers two files
+        PairConfigCache cache = new PairConfigCache(2);
+
+        // WHEN three files are read
+        cache.get(write("a", PairConfigTest.YAML_SOURCE));
+        cache.get(write("b", PairConfigTest.YAML_SOURCE));
+        cache.get(write("c", PairConfigTest.YAML_SOURCE));
+
+        // THEN only two are remembered
+        assertEquals(2, cache.size());
+    }
+
+    public void testLayeredIsMergedOnce() throws IOException {
+        // GIVEN a project .pairs and the user's
+        PairConfigCache cache = new PairConfigCache(4);
+        File home = write("home", PairConfigTest.YAML_SOURCE);
+        File project = write("project", "pairs:\n  ts: Twilight Sparkle; twilight\n");
+
+        // WHEN they're asked for twice
+        PairConfig first = cache.getLayered(project, home);
+        PairConfig second = cache.getLayered(project, home);
+
+        // THEN they're merged once
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(4, first.getTeamMembers().size());
+    }
+
+    public void testLayeredChangedProjectKeepsHome() throws IOException {
+        // GIVEN a layered config that was read
+        PairConfigCache cache = new PairConfigCache(4);
+        File home = write("home", PairConfigTest.YAML_SOURCE);
+        File project = write("project", "pairs:\n  ts: Twilight Sparkle; twilight\n");
+        PairConfig first = cache.getLayered(project, home);
+        long misses = cache.getMissCount();
+
+        // WHEN only the project's changes
+        write("project", "pairs:\n  ts: Twilight Sparkle; twilight\n  rd: Rainbow Dash; rainbow\n");
+
+        // THEN only the project's is parsed again
+        PairConfig second = cache.getLayered(project, home);
+        assertNotSame(first, second);
+        assertEquals(5, second.getTeamMembers().size());
+        assertEquals(misses + 1, cache.getMissCount());
+        assertSame(first.getTeamMemberByInitials("gc"), second.getTeamMemberByInitials("gc"));
+    }
+
+    public void testLayeredWithOneFile() throws IOException {
+        // GIVEN only the user's .pairs
+        PairConfigCache cache = new PairConfigCache(4);
+        File home = write("home", PairConfigTest.YAML_SOURCE);
+        File project = new File(folder, "missing");
+
+        // WHEN it's layered
+        // THEN it's the user's
+        assertSame(cache.get(home), cache.getLayered(project, home));
+        assertSame(cache.get(home), cache.getLayered(home, project));
+        assertNull(cache.getLayered(project, project));
+    }
+
+    private File write(String name, String contents) throws IOException {
+        File file = new File(folder, name);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -8,6 +8,10 @@ import gitpair.yaml.Node;
 import gitpair.yaml.Yaml;
 import junit.framework.TestCase;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -138,4 +142,201 @@ public class PairConfigTest extends TestCase {
         }
     }
 
-}
\ No newline at end of file
+    public void testEmailIndex() {
+        // GIVEN a configuration with members in more than one domain
+        PairConfig pairConfig = new PairConfig(PairCommitStyleConfigTest.COMMIT_STYLE_YAML);
+
+        // THEN members are found by the name before the '@'
+        assertEquals("Grumpy Cat", pairConfig.getTeamMembersByAlias("grumpy.cat").get(0).getName());
+        assertEquals("Robert A. Wallis", pairConfig.getTeamMembersByAlias("smilingrob").get(0).getName());
+        assertTrue(pairConfig.getTeamMembersByAlias("grumpy").isEmpty());
+
+        // AND by full email, not case sensitive
+        assertEquals("Robert A. Wallis", pairConfig.getTeamMembersByEmail("SmilingRob@gmail.com").get(0).getName());
+        assertTrue(pairConfig.getTeamMembersByEmail("smilingrob@example.com").isEmpty());
+    }
+
+    public void testEmailIndexDefaultDomain() {
+        // GIVEN a configuration where members don't have domains
+        PairConfig pairConfig = new PairConfig(YAML_SOURCE);
+
+        // THEN their full email uses the config's domain
+        assertEquals("Pinkie Pie", pairConfig.getTeamMembersByEmail("pinkie.pie@example.com").get(0).getName());
+        assertEquals("Pinkie Pie", pairConfig.getTeamMembersByAlias("pinkie.pie").get(0).getName());
+    }
+
+    public void testMatchDomain() {
+        assertFalse(new PairConfig(YAML_SOURCE).shouldMatchDomain());
+        assertTrue(new PairConfig("email:\n  match_domain: true\n").shouldMatchDomain());
+    }
+
+    public void testKeyOfPair() {
+        // GIVEN a configuration
+        PairConfig pairConfig = new PairConfig(YAML_SOURCE);
+        List<TeamMember> members = pairConfig.getTeamMembers();
+
+        // WHEN the same pair is keyed in either order
+        BitSet key = pairConfig.keyOf(Arrays.asList(members.get(2), members.get(0)));
+        BitSet reversed = pairConfig.keyOf(Arrays.asList(members.get(0), members.get(2)));
+
+        // THEN the keys are equal
+        assertNotNull(key);
+        assertEquals(key, reversed);
+
+        // AND the members come back in config order
+        assertEquals(Arrays.asList(members.get(0), members.get(2)), pairConfig.membersOf(key));
+    }
+
+    public void testKeyOfPairNotInConfig() {
+        // GIVEN a configuration
+        PairConfig pairConfig = new PairConfig(YAML_SOURCE);
+        TeamMember grumpyCat = pairConfig.getTeamMembers().get(0);
+
+        // WHEN a pair has someone from outside the config, or someone twice
+        TeamMember stranger = new TeamMember("gc", "Grumpy Cat", "grumpy.cat");
+
+        // THEN there is no key
+        assertNull(pairConfig.keyOf(Arrays.asList(grumpyCat, stranger)));
+        assertNull(pairConfig.keyOf(Arrays.asList(grumpyCat, grumpyCat)));
+
+        // AND nobody is an empty key
+        assertTrue(pairConfig.keyOf(new ArrayList<TeamMember>()).isEmpty());
+    }
+
+    public void testLayeredOverridesByKey() {
+        // GIVEN a project .pairs that only changes some settings
+        PairConfig home = new PairConfig(YAML_SOURCE.replace("global: false", "global: true"));
+        PairConfig project = new PairConfig("email:\n  domain: example.org\nglobal: false\n");
+
+        // WHEN it's layered over the user's
+        PairConfig config = new PairConfig(home, project);
+
+        // THEN the project's settings win, and the rest come from the user's
+        assertEquals("example.org", config.getDomain());
+        assertEquals("prefix", config.getPrefix());
+        assertFalse(config.shouldChangeGlobalUser());
+        assertEquals(3, config.getTeamMembers().size());
+        assertEquals(home.getTeamMembers().get(0), config.getTeamMembers().get(0));
+        assertEquals(1, config.getTeamMembersByEmail("grumpy.cat@example.org").size());
+    }
+
+    public void testLayeredOverridesByInitials() {
+        // GIVEN a project .pairs that changes one member and adds another
+        PairConfig home = new PairConfig(YAML_SOURCE);
+        PairConfig project = new PairConfig("pairs:\n  pp: Pinkie Pie; pinkie@example.org\n  ts: Twilight Sparkle; twilight\n");
+
+        // WHEN it's layered over the user's
+        PairConfig config = new PairConfig(home, project);
+
+        // THEN the member is replaced in the same place, and the new one is last
+        List<TeamMember> members = config.getTeamMembers();
+        assertEquals(4, members.size());
+        assertSame(home.getTeamMemberByInitials("gc"), members.get(0));
+        assertSame(project.getTeamMemberByInitials("pp"), members.get(1));
+        assertSame(home.getTeamMemberByInitials("rw"), members.get(2));
+        assertSame(project.getTeamMemberByInitials("ts"), members.get(3));
+
+        // AND the indexes are the merged team's
+        assertEquals(Collections.singletonList(members.get(1)), config.getTeamMembersByAlias("pinkie"));
+        assertTrue(config.getTeamMembersByAlias("pinkie.pie").isEmpty());
+        assertEquals(Collections.singletonList(members.get(3)), config.getTeamMembersByEmail("twilight@example.com"));
+        assertEquals(members, config.membersOf(config.keyOf(members)));
+    }
+
+    public void testLayeredIndexesOnlyChangedMembers() {
+        // GIVEN a project .pairs that changes one member, with an alias another member has too
+        PairConfig home = new PairConfig(YAML_SOURCE.replace("email:", "  gd: Grumpy Dog; grumpy.cat@example.net\nemail:"));
+        List<TeamMember> homeAlias = home.getTeamMembersByAlias("grumpy.cat");
+        PairConfig project = new PairConfig("pairs:\n  gc: Grumpy Cat; grumpy.cat@example.org\n");
+
+        // WHEN it's layered over the user's
+        PairConfig config = new PairConfig(home, project);
+
+        // THEN unchanged members keep the user's index
+        assertSame(home.getTeamMembersByAlias("pinkie.pie"), config.getTeamMembersByAlias("pinkie.pie"));
+
+        // AND the changed alias has the merged members, in config order
+        List<TeamMember> members = config.getTeamMembers();
+        assertEquals(Arrays.asList(members.get(0), members.get(3)), config.getTeamMembersByAlias("grumpy.cat"));
+        assertSame(project.getTeamMemberByInitials("gc"), config.getTeamMembersByEmail("grumpy.cat@example.org").get(0));
+        assertTrue(config.getTeamMembersByEmail("grumpy.cat@example.com").isEmpty());
+
+        // AND the user's index didn't change
+        assertEquals(2, homeAlias.size());
+        assertSame(home.getTeamMemberByInitials("gc"), home.getTeamMembersByEmail("grumpy.cat@example.com").get(0));
+    }
+
+    public void testLayeredProjectMemberWithoutEmail() {
+        // GIVEN a project member without an email, and the user's email for them
+        PairConfig home = new PairConfig(YAML_SOURCE + "email_addresses:\n  ts: twilight\n");
+        PairConfig project = new PairConfig("pairs:\n  ts: Twilight Sparkle\n  rw: Robert A. Wallis; robert\n");
+
+        // WHEN it's layered over the user's
+        PairConfig config = new PairConfig(home, project);
+
+        // THEN they get the user's email, and can pair
+        TeamMember twilight = config.getTeamMemberByInitials("ts");
+        assertEquals("twilight", twilight.getEmail());
+        assertEquals(Collections.singletonList(twilight), config.getTeamMembersByAlias("twilight"));
+        assertNull(project.getTeamMemberByInitials("ts").getEmail());
+
+        // AND a project member with an email keeps it
+        assertEquals("robert", config.getTeamMemberByInitials("rw").getEmail());
+    }
+
+    public void testLayeredSharesUnchangedTeam() {
+        // GIVEN a project .pairs without members
+        PairConfig home = new PairConfig(YAML_SOURCE);
+        PairConfig project = new PairConfig("global: true\n");
+
+        // WHEN it's layered over the user's
+        PairConfig config = new PairConfig(home, project);
+
+        // THEN the user's team is used as it is
+        assertSame(home.getTeamMembers(), config.getTeamMembers());
+        assertTrue(config.shouldChangeGlobalUser());
+        assertNotNull(config.keyOf(home.getTeamMembers()));
+    }
+
+    public void testLayeredEmailAddresses() {
+        // GIVEN a project .pairs that only changes the email of the user's member
+        PairConfig home = new PairConfig(YAML_SOURCE);
+        TeamMember homeMember = home.getTeamMemberByInitials("gc");
+        PairConfig project = new PairConfig("email_addresses:\n  gc: grumpy@example.org\n");
+
+        // WHEN it's layered over the user's
+        PairConfig config = new PairConfig(home, project);
+
+        // THEN the member has the project's email
+        TeamMember member = config.getTeamMemberByInitials("gc");
+        assertEquals("grumpy@example.org", member.getEmail());
+        assertEquals(Collections.singletonList(member), config.getTeamMembersByAlias("grumpy"));
+        assertEquals(0, config.getTeamMembers().indexOf(member));
+
+        // AND the user's member didn't change
+        assertEquals("grumpy.cat", homeMember.getEmail());
+        assertSame(homeMember, home.getTeamMemberByInitials("gc"));
+    }
+
+    public void testLayeredKeepsDuplicateInitials() {
+        // GIVEN a user's .pairs with the same initials twice
+        PairConfig home = new PairConfig("pairs:\n  gc: Grumpy Cat; grumpy.cat\n  gc: Grumpy Dog; grumpy.dog\n");
+
+        // WHEN a project with and without members is layered over it
+        PairConfig withoutMembers = new PairConfig(home, new PairConfig("global: true\n"));
+        PairConfig withMembers = new PairConfig(home, new PairConfig("pairs:\n  ts: Twilight Sparkle; twilight\n"));
+
+        // THEN both list the user's whole team
+        assertEquals(2, withoutMembers.getTeamMembers().size());
+        assertEquals(3, withMembers.getTeamMembers().size());
+        assertEquals("Grumpy Dog", withMembers.getTeamMembers().get(1).getName());
+
+        // WHEN the project replaces those initials
+        PairConfig replaced = new PairConfig(home, new PairConfig("pairs:\n  gc: Grumpy Bird; grumpy.bird\n"));
+
+        // THEN only the first is replaced, like the one found by its initials
+        assertEquals("Grumpy Bird", replaced.getTeamMembers().get(0).getName());
+        assertEquals("Grumpy Dog", replaced.getTeamMembers().get(1).getName());
+        assertEquals(2, replaced.getTeamMembers().size());
+    }
+}
@@ -4,12 +4,18 @@
 
 package gitpair.pairing;
 
-import gitpair.git.GitConfigSettings;
-import gitpair.git.GitRunner;
+import gitpair.git.GitConfigEntry;
+import gitpair.git.GitConfigScope;
+import gitpair.git.InMemoryGitBackend;
 import junit.framework.TestCase;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test pairing logic.
@@ -18,24 +24,11 @@ public class PairControllerTest extends TestCase {
 
     private PairConfig pairConfig = new PairConfig(PairConfigTest.YAML_SOURCE);
     private PairConfig pairCommitConfig = new PairConfig(PairCommitStyleConfigTest.COMMIT_STYLE_YAML);
-    private GitRunner gitRunner = new GitRunner(".");
-    private GitConfigSettings gitConfigSettings = new GitConfigSettings();
-
-    @Override
-    public void setUp() throws Exception {
-        super.setUp();
-        gitConfigSettings.save();
-    }
-
-    @Override
-    public void tearDown() throws Exception {
-        super.tearDown();
-        gitConfigSettings.restore();
-    }
+    private InMemoryGitBackend gitBackend = new InMemoryGitBackend();
 
     public void testGeneratePairName() {
         // GIVEN a configuration
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // AND some members
         TeamMember grumpyCat = new TeamMember("gc", "Grumpy Cat", "grumpy.cat");
@@ -64,7 +57,7 @@ public class PairControllerTest extends TestCase {
 
     public void testGeneratePairNameSolo() {
         // GIVEN a configuration
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // AND only one member
         TeamMember robert = new TeamMember("rw", "Robert A. Wallis", "robert.wallis");
@@ -80,7 +73,7 @@ public class PairControllerTest extends TestCase {
 
     public void testGeneratePairNameTrio() {
         // GIVEN a configuration
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // AND three members
         ArrayList<TeamMember> list = new ArrayList<TeamMember>();
@@ -97,7 +90,7 @@ public class PairControllerTest extends TestCase {
 
     public void testGeneratePairNameBadData() {
         // GIVEN a configuration
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // AND broken members
         ArrayList<TeamMember> list = new ArrayList<TeamMember>();
@@ -113,7 +106,7 @@ public class PairControllerTest extends TestCase {
 
     public void testGeneratePairEmail() {
         // GIVEN a configuration
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // AND some members
         ArrayList<TeamMember> list = new ArrayList<TeamMember>();
@@ -140,7 +133,7 @@ public class PairControllerTest extends TestCase {
 
     public void testGeneratePairEmailDifferentDomains() {
         // GIVEN a configuration
-        PairController pairController = new PairController(pairCommitConfig, gitRunner);
+        PairController pairController = new PairController(pairCommitConfig, gitBackend);
 
         // AND some members with different domains
         ArrayList<TeamMember> list = new ArrayList<TeamMember>();
@@ -167,7 +160,7 @@ public class PairControllerTest extends TestCase {
 
     public void testGeneratePairEmailSolo() {
         // GIVEN a configuration
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // AND some members
         ArrayList<TeamMember> list = new ArrayList<TeamMember>();
@@ -183,7 +176,7 @@ public class PairControllerTest extends TestCase {
     public void testGeneratePairEmailNoPrefix() {
         // GIVEN a configuration
         PairConfig noPrefixConfig = new PairConfig(null, "example.com");
-        PairController pairController = new PairController(noPrefixConfig, gitRunner);
+        PairController pairController = new PairController(noPrefixConfig, gitBackend);
 
         // AND some members
         ArrayList<TeamMember> list = new ArrayList<TeamMember>();
@@ -198,7 +191,7 @@ public class PairControllerTest extends TestCase {
 
     public void testGeneratePairEmailTrio() {
         // GIVEN a configuration
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // AND some members
         ArrayList<TeamMember> list = new ArrayList<TeamMember>();
@@ -215,7 +208,7 @@ public class PairControllerTest extends TestCase {
 
     public void testGeneratePairEmailBadData() {
         // GIVEN a configuration
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // AND some members
         ArrayList<TeamMember> list = new ArrayList<TeamMember>();
@@ -231,7 +224,7 @@ public class PairControllerTest extends TestCase {
 
     public void testPairMatcher() {
         // GIVEN a valid configuration and a configured email
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
         String email = "prefix+grumpy.cat+robert.wallis@example.com";
 
         // WHEN we get the members that match the email
@@ -246,7 +239,7 @@ public class PairControllerTest extends TestCase {
 
     public void testPairMatcherDifferentDomains() {
         // GIVEN a valid configuration using `git pair-commit` style config
-        PairController pairController = new PairController(pairCommitConfig, gitRunner);
+        PairController pairController = new PairController(pairCommitConfig, gitBackend);
 
         {
             // WHEN we use emails with different domains
@@ -275,9 +268,38 @@ public class PairControllerTest extends TestCase {
         }
     }
 
+    public void testPairMatcherSameNameDifferentDomains() {
+        // GIVEN two members with the same name before the '@'
+        PairConfig config = new PairConfig("pairs:\n" +
+                "  rw: Robert A. Wallis\n" +
+                "  rb: Robert Bobert\n" +
+                "  gc: Grumpy Cat\n" +
+                "email_addresses:\n" +
+                "  rw: robert@example.com\n" +
+                "  rb: robert@other.example.com\n" +
+                "  gc: grumpy.cat@example.com\n");
+        PairController pairController = new PairController(config, gitBackend);
+
+        // WHEN the domain isn't matched
+        List<TeamMember> team = pairController.matchTeamMembersFromEmail("grumpy.cat+robert@other.example.com", false);
+
+        // THEN both match, like before
+        assertNotNull(team);
+        assertEquals(3, team.size());
+
+        // WHEN the domain is matched
+        team = pairController.matchTeamMembersFromEmail("grumpy.cat+robert@other.example.com", true);
+
+        // THEN the one in the email's domain wins, and members without a clash still match
+        assertNotNull(team);
+        assertEquals(2, team.size());
+        assertEquals("Grumpy Cat", team.get(0).getName());
+        assertEquals("Robert Bobert", team.get(1).getName());
+    }
+
     public void testPairMatcherBadData() {
         // GIVEN a valid configuration and a configured email
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // WHEN the email has no matching names
         // THEN it shouldn't crash
@@ -300,43 +322,43 @@ public class PairControllerTest extends TestCase {
         assertEquals("Grumpy Cat", team1.get(0).getName());
     }
 
-    public void testToggleTeamMemberOff() {
+    public void testToggleTeamMemberOff() throws Exception {
         // GIVEN a valid configuration and a configured email
-        PairController pairController = new PairController(pairConfig, gitRunner);
-        gitRunner.setUserEmail("grumpy.cat+robert.wallis", false);
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        gitBackend.setUserEmail("grumpy.cat+robert.wallis", false);
         pairController.init();
 
         // WHEN a team member is toggled off
-        pairController.toggleTeamMember(pairConfig.getTeamMemberByInitials("gc"));
+        pairController.toggleTeamMemberAsync(pairConfig.getTeamMemberByInitials("gc")).get(5, TimeUnit.SECONDS);
 
         // THEN the team member should be toggled off
         assertEquals("Robert A. Wallis", pairController.getPairDisplayName());
     }
 
-    public void testToggleOffAllMembers() {
+    public void testToggleOffAllMembers() throws Exception {
         // GIVEN a valid configuration and a configured email
-        PairController pairController = new PairController(pairConfig, gitRunner);
-        gitRunner.setUserEmail("test@example.com", true);
-        gitRunner.setUserEmail("grumpy.cat+robert.wallis", false);
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        gitBackend.setUserEmail("test@example.com", true);
+        gitBackend.setUserEmail("grumpy.cat+robert.wallis", false);
         pairController.init();
 
         // WHEN all the team is toggled off
-        pairController.toggleTeamMember(pairConfig.getTeamMemberByInitials("gc"));
-        pairController.toggleTeamMember(pairConfig.getTeamMemberByInitials("rw"));
+        pairController.toggleTeamMemberAsync(pairConfig.getTeamMemberByInitials("gc")).get(5, TimeUnit.SECONDS);
+        pairController.toggleTeamMemberAsync(pairConfig.getTeamMemberByInitials("rw")).get(5, TimeUnit.SECONDS);
 
         // THEN the team member should be toggled off
         assertEquals("git pair", pairController.getPairDisplayName());
-        assertEquals("test@example.com", gitRunner.getUserEmail());
+        assertEquals("test@example.com", gitBackend.getUserEmail());
     }
 
-    public void testToggleTeamMemberOn() {
+    public void testToggleTeamMemberOn() throws Exception {
         // GIVEN a valid configuration and a configured email
-        PairController pairController = new PairController(pairConfig, gitRunner);
-        gitRunner.setUserEmail("robert.wallis", false);
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        gitBackend.setUserEmail("robert.wallis", false);
         pairController.init();
 
         // WHEN a team member is toggled on
-        pairController.toggleTeamMember(pairConfig.getTeamMemberByInitials("gc"));
+        pairController.toggleTeamMemberAsync(pairConfig.getTeamMemberByInitials("gc")).get(5, TimeUnit.SECONDS);
 
         // THEN the team member should be toggled on
         assertEquals("Grumpy Cat & Robert A. Wallis", pairController.getPairDisplayName());
@@ -344,10 +366,10 @@ public class PairControllerTest extends TestCase {
 
     public void testNoTeamMemberTitle() {
         // GIVEN a valid configuration
-        PairController pairController = new PairController(pairConfig, gitRunner);
+        PairController pairController = new PairController(pairConfig, gitBackend);
 
         // AND an invalid email
-        gitRunner.setUserEmail("not.valid", false);
+        gitBackend.setUserEmail("not.valid", false);
         pairController.init();
 
         // WHEN the display name is fetched
@@ -357,8 +379,8 @@ public class PairControllerTest extends TestCase {
 
     public void testIsPaired() {
         // GIVEN a valid configuration and a configured email
-        PairController pairController = new PairController(pairConfig, gitRunner);
-        gitRunner.setUserEmail("robert.wallis", false);
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        gitBackend.setUserEmail("robert.wallis", false);
         pairController.init();
 
         // WHEN a team member is toggled on
@@ -369,4 +391,301 @@ public class PairControllerTest extends TestCase {
         assertTrue(isPairedRw);
         assertFalse(isPairedGc);
     }
-}
\ No newline at end of file
+
+    public void testPairScope() {
+        // GIVEN a valid configuration and a local email
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        gitBackend.setUserEmail("robert.wallis", false);
+        pairController.init();
+
+        // THEN the pair is known to be local
+        assertEquals(GitConfigScope.LOCAL, pairController.getPairScope());
+    }
+
+    public void testToggleTeamMemberAsync() throws Exception {
+        // GIVEN a valid configuration and a configured email
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        gitBackend.setUserEmail("robert.wallis", false);
+        pairController.initAsync().get(5, TimeUnit.SECONDS);
+
+        // WHEN team members are toggled without waiting
+        CompletableFuture<Boolean> on = pairController.toggleTeamMemberAsync(pairConfig.getTeamMemberByInitials("gc"));
+        CompletableFuture<Boolean> off = pairController.toggleTeamMemberAsync(pairConfig.getTeamMemberByInitials("rw"));
+
+        // THEN the pair changes right away
+        assertEquals("Grumpy Cat", pairController.getPairDisplayName());
+
+        // AND git gets the writes in order
+        assertTrue(on.get(5, TimeUnit.SECONDS));
+        assertTrue(off.get(5, TimeUnit.SECONDS));
+        PairController reread = new PairController(pairConfig, gitBackend);
+        reread.init();
+        assertEquals("Grumpy Cat", reread.getPairDisplayName());
+    }
+
+    public void testToggleWritesOnce() throws Exception {
+        // GIVEN a valid configuration and a configured email
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        gitBackend.setUserEmail("robert.wallis", false);
+        pairController.init();
+
+        // WHEN a team member is toggled on
+        pairController.toggleTeamMemberAsync(pairConfig.getTeamMemberByInitials("gc")).get(5, TimeUnit.SECONDS);
+
+        // THEN git was read once and written once, name and email together
+        assertEquals(1, gitBackend.getReadCount());
+        assertEquals(1, gitBackend.getCommitCount());
+        assertEquals(2, gitBackend.getOperations().size());
+        assertEquals("set local user.name Grumpy Cat & Robert A. Wallis", gitBackend.getOperations().get(0));
+    }
+
+    public void testToggleFailsAsync() throws Exception {
+        // GIVEN git that won't take changes
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        gitBackend.setUserEmail("robert.wallis", false);
+        pairController.init();
+        gitBackend.setFailing(true);
+
+        // WHEN a team member is toggled on
+        boolean written = pairController.toggleTeamMemberAsync(pairConfig.getTeamMemberByInitials("gc")).get(5, TimeUnit.SECONDS);
+
+        // THEN the caller is told, and git still has the old pair
+        assertFalse(written);
+        assertEquals("robert.wallis", gitBackend.getUserEmail());
+    }
+
+    public void testFailedWriteKeepsPairScope() throws Exception {
+        // GIVEN a global email, and git that won't take changes
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        gitBackend.setUserEmail("robert.wallis", true);
+        pairController.init();
+        gitBackend.setFailing(true);
+
+        // WHEN the only team member is toggled off, which would unset the email
+        boolean written = pairController.toggleTeamMemberAsync(pairConfig.getTeamMemberByInitials("rw")).get(5, TimeUnit.SECONDS);
+
+        // THEN the scope is still where git has the email
+        assertFalse(written);
+        assertEquals(GitConfigScope.GLOBAL, pairController.getPairScope());
+    }
+
+    public void testPairIdentityIsRemembered() {
+        // GIVEN a controller
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        List<TeamMember> members = pairConfig.getTeamMembers();
+
+        // WHEN the same pair is asked for in either order
+        PairIdentity identity = pairController.getPairIdentity(Arrays.asList(members.get(2), members.get(0)));
+        PairIdentity reversed = pairController.getPairIdentity(Arrays.asList(members.get(0), members.get(2)));
+
+        // THEN it's worked out once
+        assertSame(identity, reversed);
+        assertEquals("Grumpy Cat & Robert A. Wallis", identity.getName());
+        assertEquals("prefix+grumpy.cat+robert.wallis@example.com", identity.getEmail());
+        assertEquals("Grumpy Cat & Robert A. Wallis", identity.getDisplayName());
+
+        // AND nobody is "git pair"
+        PairIdentity nobody = pairController.getPairIdentity(new ArrayList<TeamMember>());
+        assertNull(nobody.getName());
+        assertNull(nobody.getEmail());
+        assertEquals("git pair", nobody.getDisplayName());
+    }
+
+    public void testConcurrentTogglesAreNotLost() throws Exception {
+        // GIVEN a controller nobody is paired in
+        final PairController pairController = new PairController(pairConfig, gitBackend);
+        final List<TeamMember> members = pairConfig.getTeamMembers();
+
+        // WHEN every member is toggled on at the same time, from different threads
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (final TeamMember member : members) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    pairController.toggleTeamMemberAsync(member).join();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        // THEN everyone is paired
+        for (TeamMember member : members) {
+            assertTrue(pairController.isPaired(member));
+        }
+        assertEquals("Grumpy Cat, Pinkie Pie, and Robert A. Wallis", pairController.getPairDisplayName());
+    }
+
+    public void testInitDoesNotOverwriteNewerToggle() {
+        // GIVEN git says Grumpy Cat is paired, but Pinkie Pie is toggled while git is being asked
+        final TeamMember pinkiePie = pairConfig.getTeamMembers().get(1);
+        final PairController[] controller = new PairController[1];
+        InMemoryGitBackend slowBackend = new InMemoryGitBackend() {
+            @Override
+            public GitConfigEntry getConfigEntry(@NotNull String key) {
+                controller[0].toggleTeamMemberAsync(pinkiePie);
+                return super.getConfigEntry(key);
+            }
+        };
+        slowBackend.setUserEmail("prefix+grumpy.cat@example.com", false);
+        controller[0] = new PairController(pairConfig, slowBackend);
+
+        // WHEN the controller is initialized
+        controller[0].init();
+
+        // THEN the toggle wins
+        assertTrue(controller[0].isPaired(pinkiePie));
+        assertFalse(controller[0].isPaired(pairConfig.getTeamMembers().get(0)));
+    }
+
+    public void testSetPairWritesOnce() throws Exception {
+        // GIVEN a trio is paired
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        List<TeamMember> members = pairConfig.getTeamMembers();
+        pairController.setPairAsync(members).get(5, TimeUnit.SECONDS);
+        int commits = gitBackend.getCommitCount();
+
+        // WHEN the pair is changed to someone else entirely
+        boolean written = pairController.setPairAsync(Arrays.asList(members.get(1))).get(5, TimeUnit.SECONDS);
+
+        // THEN git is written once
+        assertTrue(written);
+        assertEquals(commits + 1, gitBackend.getCommitCount());
+        assertEquals("prefix+pinkie.pie@example.com", gitBackend.getUserEmail());
+        assertTrue(pairController.isPaired(members.get(1)));
+        assertFalse(pairController.isPaired(members.get(0)));
+        assertEquals("Pinkie Pie", pairController.getPairDisplayName());
+    }
+
+    public void testSetPairSameMembersDoesNotWrite() throws Exception {
+        // GIVEN a pair
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        List<TeamMember> members = pairConfig.getTeamMembers();
+        pairController.setPairAsync(Arrays.asList(members.get(0), members.get(2))).get(5, TimeUnit.SECONDS);
+        int commits = gitBackend.getCommitCount();
+
+        // WHEN the same members are chosen again, in another order, with a duplicate
+        boolean written = pairController.setPairAsync(Arrays.asList(members.get(2), members.get(0), members.get(2))).get(5, TimeUnit.SECONDS);
+
+        // THEN git isn't written
+        assertTrue(written);
+        assertEquals(commits, gitBackend.getCommitCount());
+    }
+
+    public void testSetPairAsyncToNobody() throws Exception {
+        // GIVEN a pair
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        pairController.setPairAsync(pairConfig.getTeamMembers()).get(5, TimeUnit.SECONDS);
+
+        // WHEN nobody is chosen
+        Boolean written = pairController.setPairAsync(new ArrayList<TeamMember>()).get(5, TimeUnit.SECONDS);
+
+        // THEN git's user is unset
+        assertTrue(written);
+        assertNull(gitBackend.getUserEmail());
+        assertEquals("git pair", pairController.getPairDisplayName());
+    }
+
+    public void testToggleLaterWritesFinalPairOnce() throws Exception {
+        // GIVEN a controller nobody is paired in
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        List<TeamMember> members = pairConfig.getTeamMembers();
+
+        // WHEN several members are clicked quickly
+        pairController.toggleTeamMemberLater(members.get(0));
+        pairController.toggleTeamMemberLater(members.get(1));
+        pairController.toggleTeamMemberLater(members.get(0));
+        CompletableFuture<Boolean> written = pairController.toggleTeamMemberLater(members.get(2));
+
+        // THEN the pair changes right away, but git isn't written yet
+        assertEquals("Pinkie Pie & Robert A. Wallis", pairController.getPairDisplayName());
+        assertTrue(pairController.hasPendingWrite());
+
+        // WHEN the writes are flushed
+        pairController.flushPendingWrite();
+
+        // THEN git is written once, with the final pair
+        assertTrue(written.get(5, TimeUnit.SECONDS));
+        assertEquals(1, gitBackend.getCommitCount());
+        assertEquals("prefix+pinkie.pie+robert.wallis@example.com", gitBackend.getUserEmail());
+    }
+
+    public void testToggleLaterBackToGitPairDoesNotWrite() throws Exception {
+        // GIVEN git has a pair
+        gitBackend.setUserEmail("prefix+grumpy.cat@example.com", false);
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        pairController.init();
+        TeamMember pinkiePie = pairConfig.getTeamMembers().get(1);
+
+        // WHEN someone is toggled on and off again
+        pairController.toggleTeamMemberLater(pinkiePie);
+        CompletableFuture<Boolean> written = pairController.toggleTeamMemberLater(pinkiePie);
+        pairController.flushPendingWrite();
+
+        // THEN git isn't written
+        assertTrue(written.get(5, TimeUnit.SECONDS));
+        assertEquals(0, gitBackend.getCommitCount());
+    }
+
+    public void testRefreshAsync() throws Exception {
+        // GIVEN a controller that knows who is paired
+        gitBackend.setUserEmail("prefix+grumpy.cat@example.com", false);
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        pairController.init();
+
+        // WHEN git is changed behind its back, and it's refreshed
+        gitBackend.setUserEmail("prefix+pinkie.pie@example.com", false);
+        Boolean changed = pairController.refreshAsync().get(5, TimeUnit.SECONDS);
+
+        // THEN it knows the new pair
+        assertTrue(changed);
+        assertTrue(pairController.isPaired(pairConfig.getTeamMembers().get(1)));
+        assertFalse(pairController.isPaired(pairConfig.getTeamMembers().get(0)));
+
+        // AND refreshing again changes nothing
+        assertFalse(pairController.refreshAsync().get(5, TimeUnit.SECONDS));
+    }
+
+    public void testRefreshAsyncUnsetEmail() throws Exception {
+        // GIVEN a pair
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        pairController.setPairAsync(pairConfig.getTeamMembers()).get(5, TimeUnit.SECONDS);
+
+        // WHEN the email is unset outside the IDE
+        gitBackend.unsetUserEmail();
+        boolean changed = pairController.refreshAsync().get(5, TimeUnit.SECONDS);
+
+        // THEN nobody is paired
+        assertTrue(changed);
+        assertEquals("git pair", pairController.getPairDisplayName());
+        for (TeamMember member : pairConfig.getTeamMembers()) {
+            assertFalse(pairController.isPaired(member));
+        }
+        assertNull(pairController.getPairScope());
+    }
+
+    public void testRefreshAsyncKeepsPendingToggle() throws Exception {
+        // GIVEN a toggle that isn't written to git yet
+        PairController pairController = new PairController(pairConfig, gitBackend);
+        TeamMember grumpyCat = pairConfig.getTeamMembers().get(0);
+        pairController.toggleTeamMemberLater(grumpyCat);
+
+        // WHEN it's refreshed
+        Boolean changed = pairController.refreshAsync().get(5, TimeUnit.SECONDS);
+
+        // THEN git's older answer doesn't undo the toggle
+        assertFalse(changed);
+        assertTrue(pairController.isPaired(grumpyCat));
+        pairController.flushPendingWrite().get(5, TimeUnit.SECONDS);
+    }
+}
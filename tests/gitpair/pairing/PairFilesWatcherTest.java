@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Noticing changes to .pairs and git config.
+ */
+public class PairFilesWatcherTest extends TestCase {
+
+    private final AtomicInteger changes = new AtomicInteger();
+    private final Semaphore changed = new Semaphore(0);
+    private final Runnable countChanges = new Runnable() {
+        @Override
+        public void run() {
+            changes.incrementAndGet();
+            changed.release();
+        }
+    };
+
+    public void testBurstIsReportedOnce() throws Exception {
+        // GIVEN a watcher
+        File folder = Files.createTempDirectory("gitpair").toFile();
+        PairFilesWatcher watcher = new PairFilesWatcher(Arrays.asList(new File(folder, ".pairs")), 100, countChanges);
+
+        // WHEN the IDE reports several changes quickly
+        watcher.changed();
+        watcher.changed();
+        watcher.changed();
+
+        // THEN they are reported once
+        assertTrue(changed.tryAcquire(5, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        assertEquals(1, changes.get());
+    }
+
+    public void testFileWrittenOutsideIde() throws Exception {
+        // GIVEN a watcher that is watching
+        File folder = Files.createTempDirectory("gitpair").toFile();
+        File pairs = new File(folder, ".pairs");
+        PairFilesWatcher watcher = new PairFilesWatcher(Arrays.asList(pairs), 50, countChanges);
+        watcher.start();
+        try {
+            // WHEN an unrelated file is written, then the watched one
+            Files.write(new File(folder, "other").toPath(), "other".getBytes(StandardCharsets.UTF_8));
+            Files.write(pairs.toPath(), PairConfigTest.YAML_SOURCE.getBytes(StandardCharsets.UTF_8));
+
+            // THEN the change is reported
+            assertTrue(changed.tryAcquire(30, TimeUnit.SECONDS));
+        } finally {
+            watcher.close();
+        }
+    }
+
+    public void testIsWatched() throws Exception {
+        // GIVEN a watcher
+        File folder = Files.createTempDirectory("gitpair").toFile();
+        PairFilesWatcher watcher = new PairFilesWatcher(Arrays.asList(new File(folder, ".pairs")), 50, countChanges);
+
+        // THEN only the watched file is watched
+        assertTrue(watcher.isWatched(new File(folder, ".pairs").getPath()));
+        assertFalse(watcher.isWatched(new File(folder, "other").getPath()));
+    }
+}
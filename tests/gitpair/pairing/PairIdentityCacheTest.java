@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import junit.framework.TestCase;
+
+import java.util.BitSet;
+
+/**
+ * Remembering pair identities.
+ */
+public class PairIdentityCacheTest extends TestCase {
+
+    public void testRemembersIdentity() {
+        // GIVEN a cache with a pair in it
+        PairIdentityCache cache = new PairIdentityCache(4);
+        PairIdentity identity = new PairIdentity("Grumpy Cat", "grumpy.cat@example.com", "Grumpy Cat");
+        cache.put(key(0), identity);
+
+        // WHEN the same members are looked up with a different key instance
+        PairIdentity found = cache.get(key(0));
+
+        // THEN it's the same identity
+        assertSame(identity, found);
+        assertNull(cache.get(key(1)));
+    }
+
+    public void testForgetsLeastRecentlyUsed() {
+        // GIVEN a full cache
+        PairIdentityCache cache = new PairIdentityCache(2);
+        cache.put(key(0), new PairIdentity("a", "a", "a"));
+        cache.put(key(1), new PairIdentity("b", "b", "b"));
+
+        // WHEN the first pair is used, and another pair is added
+        cache.get(key(0));
+        cache.put(key(2), new PairIdentity("c", "c", "c"));
+
+        // THEN the pair that wasn't used is forgotten
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(key(0)));
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(2)));
+    }
+
+    private static BitSet key(int... ordinals) {
+        BitSet key = new BitSet();
+        for (int ordinal : ordinals) {
+            key.set(ordinal);
+        }
+        return key;
+    }
+}
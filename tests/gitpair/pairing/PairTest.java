@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable pair snapshots.
+ */
+public class PairTest extends TestCase {
+
+    private final TeamMember grumpyCat = new TeamMember("gc", "Grumpy Cat", "grumpy.cat");
+    private final TeamMember pinkiePie = new TeamMember("pp", "Pinkie Pie", "pinkie.pie");
+
+    public void testToggledDoesNotChangePair() {
+        // GIVEN a pair of one
+        List<TeamMember> members = new ArrayList<TeamMember>();
+        members.add(grumpyCat);
+        Pair pair = new Pair(members, new PairIdentity("Grumpy Cat", "grumpy.cat", "Grumpy Cat"));
+
+        // WHEN the list it was made from changes, and someone is toggled on
+        members.add(pinkiePie);
+        List<TeamMember> toggled = pair.toggled(pinkiePie);
+
+        // THEN the pair is unchanged
+        assertEquals(1, pair.getMembers().size());
+        assertTrue(pair.contains(grumpyCat));
+        assertFalse(pair.contains(pinkiePie));
+
+        // AND the new members have both
+        assertEquals(2, toggled.size());
+        assertTrue(toggled.contains(pinkiePie));
+    }
+
+    public void testToggledOff() {
+        // GIVEN a pair of one
+        List<TeamMember> members = new ArrayList<TeamMember>();
+        members.add(grumpyCat);
+        Pair pair = new Pair(members, new PairIdentity("Grumpy Cat", "grumpy.cat", "Grumpy Cat"));
+
+        // WHEN that member is toggled
+        List<TeamMember> toggled = pair.toggled(grumpyCat);
+
+        // THEN nobody is left
+        assertTrue(toggled.isEmpty());
+    }
+
+    public void testMembersCantBeChanged() {
+        // GIVEN a pair
+        Pair pair = new Pair(new ArrayList<TeamMember>(), new PairIdentity(null, null, "git pair"));
+
+        // WHEN someone tries to change it
+        try {
+            pair.getMembers().add(grumpyCat);
+            fail("members should be unmodifiable");
+        } catch (UnsupportedOperationException expected) {
+            // THEN it can't be changed
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+/**
+ * Reading .pairs files into YAML source.
+ */
+public class PairsFileLoaderTest extends TestCase {
+
+    private File folder;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        folder = Files.createTempDirectory("gitpair").toFile();
+    }
+
+    public void testLoad() throws IOException {
+        // GIVEN a .pairs file
+        byte[] bytes = PairConfigTest.YAML_SOURCE.getBytes(StandardCharsets.UTF_8);
+        File pairs = write("pairs", bytes);
+
+        // WHEN it's loaded
+        PairsFileLoader.Contents contents = PairsFileLoader.load(pairs);
+
+        // THEN it's the same text, size and hash as the bytes
+        assertEquals(PairConfigTest.YAML_SOURCE, contents.getText().toString());
+        assertEquals(bytes.length, contents.getSize());
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        assertEquals(crc.getValue(), contents.getHash());
+        assertEquals(3, new PairConfig(contents.getText()).getTeamMembers().size());
+    }
+
+    public void testLoadIsUtf8() throws IOException {
+        // GIVEN a name that isn't ASCII
+        File pairs = write("pairs", "pairs:\n  zo: Zo\u00EB \u00C5ngstr\u00F6m; zoe\n".getBytes(StandardCharsets.UTF_8));
+
+        // WHEN it's loaded
+        PairConfig config = new PairConfig(PairsFileLoader.load(pairs).getText());
+
+        // THEN the name is decoded as UTF-8
+        assertEquals("Zo\u00EB \u00C5ngstr\u00F6m", config.getTeamMemberByInitials("zo").getName());
+    }
+
+    public void testLoadMapsBigFiles() throws IOException {
+        // GIVEN a .pairs file bigger than the mapping threshold
+        StringBuilder source = new StringBuilder(PairConfigTest.YAML_SOURCE);
+        while (source.length() <= PairsFileLoader.MAP_THRESHOLD) {
+            source.append("# padding padding padding padding padding padding padding padding\n");
+        }
+        File pairs = write("big", source.toString().getBytes(StandardCharsets.UTF_8));
+
+        // WHEN it's loaded
+        PairsFileLoader.Contents contents = PairsFileLoader.load(pairs);
+
+        // THEN it's the whole file
+        assertEquals(source.length(), contents.getSize());
+        assertEquals(source.toString(), contents.getText().toString());
+        assertEquals(3, new PairConfig(contents.getText()).getTeamMembers().size());
+    }
+
+    public void testLoadMissingFile() {
+        // GIVEN a file that doesn't exist
+        File missing = new File(folder, "missing");
+
+        // WHEN it's loaded
+        // THEN it can't be read
+        try {
+            PairsFileLoader.load(missing);
+            fail("loaded a missing file");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    public void testToYamlSource() {
+        // GIVEN files with different line endings
+        // THEN "\r\n" is left for the parser, and a lone '\r' ends a line
+        assertEquals("a\r\nb", source("a\r\nb"));
+        assertEquals("a\nb\n", source("a\rb\n"));
+        assertEquals("a\nb\n", source("a\r\nb\r"));
+        assertEquals("", source(""));
+    }
+
+    public void testToYamlSourceSkipsByteOrderMark() {
+        // GIVEN a file saved with a byte order mark
+        // THEN the mark isn't part of the first key
+        assertEquals("pairs:\n", source("\uFEFFpairs:\n"));
+    }
+
+    public void testToYamlSourceReplacesMalformedBytes() {
+        // GIVEN a byte that isn't UTF-8
+        ByteBuffer bytes = ByteBuffer.wrap(new byte[]{'a', (byte) 0xff, 'b'});
+
+        // THEN it's replaced
+        assertEquals("a\uFFFDb", PairsFileLoader.toYamlSource(bytes).toString());
+    }
+
+    public void testCrlfFileParsesLikeLf() throws IOException {
+        // GIVEN the same .pairs file saved with Windows line endings
+        File pairs = write("crlf", PairConfigTest.YAML_SOURCE.replace("\n", "\r\n").getBytes(StandardCharsets.UTF_8));
+
+        // WHEN it's parsed
+        PairConfig config = new PairConfig(PairsFileLoader.load(pairs).getText());
+
+        // THEN no value keeps a '\r'
+        assertEquals(3, config.getTeamMembers().size());
+        assertEquals("robert.wallis", config.getTeamMemberByInitials("rw").getEmail());
+        assertEquals("example.com", config.getDomain());
+    }
+
+    private static String source(String text) {
+        return PairsFileLoader.toYamlSource(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))).toString();
+    }
+
+    private File write(String name, byte[] contents) throws IOException {
+        File file = new File(folder, name);
+        Files.write(file.toPath(), contents);
+        return file;
+    }
+}
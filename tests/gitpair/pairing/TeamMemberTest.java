@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2018 Robert A. Wallis, All Rights Reserved.
+ */
+
+package gitpair.pairing;
+
+import junit.framework.TestCase;
+
+import java.util.Locale;
+
+/**
+ * Make sure a team member's email is parsed like it was split every time.
+ */
+public class TeamMemberTest extends TestCase {
+
+    public void testEmailParts() {
+        // GIVEN a team member with a full email
+        TeamMember member = new TeamMember("rw", "Robert A. Wallis", "Robert.Wallis@Example.com");
+
+        // THEN the parts are ready
+        assertEquals("Robert.Wallis", member.getEmailLocalPart());
+        assertEquals("Example.com", member.getEmailDomain());
+        assertEquals("robert.wallis@example.com", member.getLowerCaseEmail());
+    }
+
+    public void testLowerCaseEmailIgnoresLocale() {
+        // GIVEN a Turkish user, where "I" lower cases to a dotless "i"
+        Locale before = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            // WHEN an email with an "I" is parsed
+            TeamMember member = new TeamMember("il", "Ilker", "ILKER@EXAMPLE.COM");
+
+            // THEN it's lower cased like git and mail servers do
+            assertEquals("ilker@example.com", member.getLowerCaseEmail());
+        } finally {
+            Locale.setDefault(before);
+        }
+    }
+
+    public void testWithEmail() {
+        // GIVEN a team member with only a username
+        TeamMember member = new TeamMember("rw", "Robert A. Wallis", "robert.wallis");
+        assertEquals("robert.wallis", member.getEmailLocalPart());
+        assertNull(member.getEmailDomain());
+
+        // WHEN it's given a different email
+        TeamMember changed = member.withEmail("smilingrob@gmail.com");
+
+        // THEN the copy has the new parts
+        assertEquals("rw", changed.getInitials());
+        assertEquals("Robert A. Wallis", changed.getName());
+        assertEquals("smilingrob", changed.getEmailLocalPart());
+        assertEquals("gmail.com", changed.getEmailDomain());
+
+        // AND the team member didn't change
+        assertEquals("robert.wallis", member.getEmail());
+        assertNull(member.getEmailDomain());
+
+        // WHEN the email is removed
+        TeamMember removed = member.withEmail(null);
+
+        // THEN there are no parts
+        assertNull(removed.getEmailLocalPart());
+        assertNull(removed.getEmailDomain());
+        assertNull(removed.getLowerCaseEmail());
+    }
+
+    public void testOddEmails() {
+        // the parts are what splitting on '@' always gave
+        String[] emails = {"", "@", "@@", "@example.com", "robert@", "robert@@example.com", "a@b@c"};
+        for (String email : emails) {
+            TeamMember member = new TeamMember("rw", "Robert A. Wallis", email);
+            String[] split = email.split("@");
+            assertEquals(email, split.length == 0 ? null : split[0], member.getEmailLocalPart());
+            assertEquals(email, split.length < 2 ? null : split[1], member.getEmailDomain());
+        }
+    }
+}
@@ -95,4 +95,67 @@ public class NodeTest extends TestCase {
         // AND the old name does not exist
         assertFalse(node.containsKey("test"));
     }
-}
\ No newline at end of file
+
+    public void testGetManyChildren() {
+        // GIVEN a node with enough children to be indexed, some with the same name
+        Node node = new Node(null);
+        for (int i = 0; i < 20; i++) {
+            Node child = new Node("child" + (i % 10));
+            child.setValue("value" + i);
+            node.addChild(child);
+        }
+
+        // WHEN children are looked up
+        // THEN the first child with the name is found, like a scan would
+        assertEquals("value3", node.get("child3").getValue());
+        assertTrue(node.containsKey("child9"));
+        assertNull(node.get("child10"));
+
+        // WHEN a child is added after a lookup
+        node.addChild(new Node("child10"));
+
+        // THEN it can be found
+        assertTrue(node.containsKey("child10"));
+
+        // WHEN a child is renamed after a lookup
+        node.getChildren().get(0).setKey("renamed");
+
+        // THEN it's found by its new name, and the old name finds the next child with it
+        assertEquals("value0", node.get("renamed").getValue());
+        assertEquals("value10", node.get("child0").getValue());
+    }
+
+    public void testChildrenCantBeChangedDirectly() {
+        // GIVEN a node
+        Node node = new Node(null);
+
+        // WHEN children are changed without addChild
+        try {
+            node.getChildren().add(new Node("test"));
+            fail("children should only change with addChild");
+        } catch (UnsupportedOperationException expected) {
+            // THEN it's not allowed, so lookups stay right
+        }
+    }
+
+    public void testParsedNodeCanBeChanged() {
+        // GIVEN a parsed node with a value of two lines
+        Node root = Yaml.parse("pairs:\n  gc: Grumpy Cat\n    grumpy.cat\n");
+        Node gc = root.get("pairs").get("gc");
+
+        // WHEN more is added to it
+        gc.appendValue(" more ");
+
+        // THEN it's the same as if it had been built by hand
+        assertEquals("Grumpy Cat\ngrumpy.cat\nmore", gc.getValue());
+
+        // WHEN it's renamed and set
+        gc.setKey("grumpy");
+        gc.setValue("Grumpy");
+
+        // THEN the source doesn't matter anymore
+        assertEquals("grumpy", gc.getKey());
+        assertEquals("Grumpy", gc.getValue());
+        assertSame(gc, root.get("pairs").get("grumpy"));
+    }
+}
@@ -135,4 +135,38 @@ public class YamlTest extends TestCase {
         assertEquals(0, Yaml.depth("  "));
     }
 
-}
\ No newline at end of file
+    public void testParseCharSequence() {
+        // GIVEN the YAML in a StringBuilder, with windows line endings
+        StringBuilder source = new StringBuilder(YAML_SOURCE.replace("\n", "\r\n"));
+
+        // WHEN we parse it
+        Node root = Yaml.parse(source);
+
+        // THEN it's the same as parsing the string
+        assertEquals(Yaml.parse(YAML_SOURCE).toString(), root.toString());
+        assertEquals("Grumpy Cat;grumpy.cat", root.get("pairs").get("gc").getValue());
+    }
+
+    public void testParseDeepNesting() {
+        // GIVEN nodes nested deeper than the parser starts out with
+        StringBuilder source = new StringBuilder();
+        for (int depth = 0; depth < 20; depth++) {
+            for (int i = 0; i < depth; i++) {
+                source.append(' ');
+            }
+            source.append("d").append(depth).append(": v").append(depth).append('\n');
+        }
+        source.append("back: to the top\n");
+
+        // WHEN we parse it
+        Node root = Yaml.parse(source);
+
+        // THEN every level is there
+        Node node = root;
+        for (int depth = 0; depth < 20; depth++) {
+            node = node.get("d" + depth);
+            assertEquals("v" + depth, node.getValue());
+        }
+        assertEquals("to the top", root.get("back").getValue());
+    }
+}